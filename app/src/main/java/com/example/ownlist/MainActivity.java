@@ -45,6 +45,7 @@ import android.widget.Toast;
 import com.example.listsync.CheckItem;
 import com.example.listsync.Consumer;
 import com.example.listsync.ListSyncer;
+import com.example.listsync.SyncConfiguration;
 import com.example.listsync.UpdatingListSyncer;
 import com.example.listsync.WebDavConfiguration;
 import com.example.listsync.WebDavRepository;
@@ -86,7 +87,11 @@ public class MainActivity extends Activity {
                 .build();
         WebDavRepository repository = new WebDavRepository(config);
 
-        listSyncer = new UpdatingListSyncer(repository.getList("test2"));
+        SyncConfiguration syncConfig = SyncConfiguration.builder()
+                .journalDirectory(syncDir)
+                .replicaDirectory(syncDir)
+                .build();
+        listSyncer = new UpdatingListSyncer(repository.getList("test2"), syncConfig);
         listSyncer.registerExceptionHandler(new Consumer<Exception>() {
             @Override
             public void consume(final Exception e) {
@@ -156,7 +161,7 @@ public class MainActivity extends Activity {
     @Override
     protected void onStart() {
         LOGGER.info("starting");
-        listSyncer.setUpdateTimeout(10, TimeUnit.SECONDS);
+        listSyncer.setAdaptiveUpdateTimeout(10, 300, TimeUnit.SECONDS);
         super.onStart();
     }
 
@@ -167,11 +172,20 @@ public class MainActivity extends Activity {
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        LOGGER.info("destroying");
+        listSyncer.close();
+        super.onDestroy();
+    }
+
     private class RepositoryBackedAdapter extends BaseAdapter {
         private ListSyncer source;
+        private List<CheckItem> items;
 
         private RepositoryBackedAdapter(ListSyncer source) {
             this.source = source;
+            this.items = source.getLocal();
             source.registerChangeListener(new Consumer<List<CheckItem>>() {
                 @Override
                 public void consume(List<CheckItem> value) {
@@ -184,6 +198,7 @@ public class MainActivity extends Activity {
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
+                    items = source.getLocal();
                     notifyDataSetChanged();
                 }
             });
@@ -191,12 +206,12 @@ public class MainActivity extends Activity {
 
         @Override
         public int getCount() {
-            return source.getLocal().size();
+            return items.size();
         }
 
         @Override
         public Object getItem(int position) {
-            return source.getLocal().get(position);
+            return items.get(position);
         }
 
         @Override
@@ -224,7 +239,7 @@ public class MainActivity extends Activity {
             if (v == null) {
                 throw new NullPointerException("view was null");
             }
-            CheckItem p = source.getLocal().get(position);
+            CheckItem p = items.get(position);
             CheckBox checkBox = (CheckBox) v.findViewById(R.id.checkBox);
             checkBox.setText(p.getText());
             checkBox.setChecked(p.isChecked());
@@ -238,7 +253,7 @@ public class MainActivity extends Activity {
             removeButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    final CheckItem remove = source.getLocal().get(position);
+                    final CheckItem remove = items.get(position);
                     new Thread() {
                         @Override
                         public void run() {
@@ -252,7 +267,7 @@ public class MainActivity extends Activity {
         }
 
         private void toggle(int position) {
-            final CheckItem checkItem = source.getLocal().get(position);
+            final CheckItem checkItem = items.get(position);
             new Thread() {
                 @Override
                 public void run() {
@@ -0,0 +1,128 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AtomicList} changes and reads at different list sizes. A change does not copy the list;
+ * the first read after a change does, so only that read grows with the size of the list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicListBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private AtomicList<CheckItem> list;
+    private List<CheckItem> sameItems;
+    private CheckItem middle;
+    private CheckItem absent;
+
+    @Setup
+    public void setUp() {
+        List<CheckItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new CheckItem("item " + i, i % 3 == 0));
+        }
+        list = new AtomicList<>(new ArrayList<>(items));
+        sameItems = new ArrayList<>(items);
+        middle = items.get(size / 2);
+        absent = new CheckItem("not in the list");
+    }
+
+    @Benchmark
+    public List<CheckItem> read() {
+        return list.getDelegate();
+    }
+
+    /**
+     * Adds an item and removes it again, so the list has the same size in every invocation.
+     */
+    @Benchmark
+    public boolean addAndRemove() {
+        list.addIfAbsent(absent);
+        return list.removeIfPresent(absent);
+    }
+
+    /**
+     * Toggles an item in the middle of the list twice.
+     */
+    @Benchmark
+    public void toggle() {
+        CheckItem toggled = middle.toggleChecked();
+        list.replace(middle, toggled);
+        list.replace(toggled, middle);
+    }
+
+    /**
+     * The same two toggles in one batch.
+     */
+    @Benchmark
+    public void toggleInBatch() {
+        final CheckItem toggled = middle.toggleChecked();
+        list.batch(new Runnable() {
+            @Override
+            public void run() {
+                list.replace(middle, toggled);
+                list.replace(toggled, middle);
+            }
+        });
+    }
+
+    /**
+     * A toggle followed by a read, which publishes a new snapshot.
+     */
+    @Benchmark
+    public List<CheckItem> toggleAndRead() {
+        CheckItem toggled = middle.toggleChecked();
+        list.replace(middle, toggled);
+        list.replace(toggled, middle);
+        return list.getDelegate();
+    }
+
+    /**
+     * A refresh that finds nothing changed remotely.
+     */
+    @Benchmark
+    public boolean replaceAllUnchanged() {
+        return list.replaceAll(sameItems);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and printing of single items, both the {@link CheckItem} methods and the
+ * {@link CheckItemCodec} used for hrefs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckItemBenchmark {
+
+    private final String unchecked = "[_] Milch";
+    private final String checked = "[✔] Brot überm Markt";
+    private final String href = "/remote.php/webdav/lists/shopping/%5B%E2%9C%94%5D%20Brot%20%C3%BCberm%20Markt";
+    private final CheckItem item = new CheckItem("Brot überm Markt", true);
+
+    @Benchmark
+    public CheckItem fromStringUnchecked() {
+        return CheckItem.fromString(unchecked);
+    }
+
+    @Benchmark
+    public CheckItem fromStringChecked() {
+        return CheckItem.fromString(checked);
+    }
+
+    @Benchmark
+    public String toStringChecked() {
+        return item.toString();
+    }
+
+    @Benchmark
+    public int hashCodeChecked() {
+        return item.hashCode();
+    }
+
+    @Benchmark
+    public CheckItem decodeHref() {
+        return CheckItemCodec.decodeItem(href);
+    }
+
+    @Benchmark
+    public String encodeHref() {
+        return CheckItemCodec.encodeItem(item);
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.apache.jackrabbit.webdav.MultiStatus;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.property.DavProperty;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.xml.DomUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a PROPFIND response of a list into {@link CheckItem}s. The body is built from the
+ * recorded response in propfind-list.xml by repeating its item responses until it holds the
+ * given number of items.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiStatusDecodeBenchmark {
+
+    private static final String RESPONSE_START = "<d:response>";
+    private static final String MULTISTATUS_END = "</d:multistatus>";
+
+    @Param({"10", "100", "1000"})
+    private int items;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        String recorded = Resources.toString(Resources.getResource("propfind-list.xml"), Charsets.UTF_8);
+        int collectionStart = recorded.indexOf(RESPONSE_START);
+        int itemsStart = recorded.indexOf(RESPONSE_START, collectionStart + 1);
+        int itemsEnd = recorded.lastIndexOf(MULTISTATUS_END);
+        String[] itemResponses = recorded.substring(itemsStart, itemsEnd).split("(?=" + RESPONSE_START + ")");
+
+        StringBuilder result = new StringBuilder(recorded.substring(0, itemsStart));
+        for (int i = 0; i < items; i++) {
+            String response = itemResponses[i % itemResponses.length];
+            result.append(response.replace("</d:href>", "%20" + i + "</d:href>"));
+        }
+        result.append(recorded.substring(itemsEnd));
+        body = result.toString().getBytes(Charsets.UTF_8);
+        if (streaming().size() != items || dom().size() != items) {
+            throw new IllegalStateException("could not decode the generated body");
+        }
+    }
+
+    /**
+     * The SAX parser and {@link CheckItemCodec}, as {@link WebDavRepository} decodes lists.
+     */
+    @Benchmark
+    public List<CheckItem> streaming() throws IOException {
+        final List<CheckItem> result = new ArrayList<>(items);
+        MultiStatusParser.parse(new ByteArrayInputStream(body), new Consumer<MultiStatusParser.Response>() {
+            @Override
+            public void consume(MultiStatusParser.Response response) {
+                if (response.isCollection()) {
+                    return;
+                }
+                CheckItem item = CheckItemCodec.decodeItem(response.getHref());
+                if (item != null && CheckItemCodec.parseHttpDate(response.getLastModified()) >= 0) {
+                    result.add(item);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * A DOM of the whole body and jackrabbit's {@link MultiStatus}, with hrefs decoded by
+     * {@link URLDecoder} and {@link CheckItem#fromString}, for comparison.
+     */
+    @Benchmark
+    public List<CheckItem> dom() throws IOException {
+        Document document;
+        try {
+            document = DomUtil.parseDocument(new ByteArrayInputStream(body));
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        List<CheckItem> result = new ArrayList<>(items);
+        for (MultiStatusResponse response : MultiStatus.createFromXml(document.getDocumentElement()).getResponses()) {
+            String href = response.getHref();
+            if (href.endsWith("/")) {
+                continue;
+            }
+            String name = URLDecoder.decode(href.substring(href.lastIndexOf('/') + 1), Charsets.UTF_8.name());
+            CheckItem item = CheckItem.fromString(name);
+            if (item != null && lastModified(response) != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static Date lastModified(MultiStatusResponse response) {
+        DavProperty<?> property = response.getProperties(200).get(DavPropertyName.GETLASTMODIFIED);
+        if (property == null) {
+            return null;
+        }
+        try {
+            return DateUtil.parseDate(property.getValue().toString());
+        } catch (DateParseException e) {
+            return null;
+        }
+    }
+
+}
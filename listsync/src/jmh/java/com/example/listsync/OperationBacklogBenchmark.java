@@ -0,0 +1,114 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local edits while a backlog of operations is waiting for the remote. Pending operations are
+ * merged per item as they are queued, so this measures what compacting the backlog costs per
+ * edit. The remote is never synced, so the backlog keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationBacklogBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int backlog;
+
+    private ListSyncer syncer;
+    private CheckItem pending;
+    private CheckItem fresh;
+
+    @Setup
+    public void setUp() {
+        syncer = new ListSyncer(new OfflineRepository());
+        for (int i = 0; i < backlog; i++) {
+            syncer.add(new CheckItem("item " + i));
+        }
+        pending = new CheckItem("item " + backlog / 2);
+        fresh = new CheckItem("not queued yet");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (syncer.getPendingOperations() != backlog) {
+            throw new IllegalStateException("backlog changed to " + syncer.getPendingOperations());
+        }
+        syncer.close();
+    }
+
+    /**
+     * Toggles an item with a pending add twice; both toggles are merged into that add.
+     */
+    @Benchmark
+    public void toggleQueued() {
+        syncer.toggle(pending);
+        syncer.toggle(pending.toggleChecked());
+    }
+
+    /**
+     * Adds an item and removes it again; the two operations cancel each other out.
+     */
+    @Benchmark
+    public void addAndRemove() {
+        syncer.add(fresh);
+        syncer.remove(fresh);
+    }
+
+    private static class OfflineRepository implements ListRepository {
+        @Override
+        public List<CheckItem> getContent() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void remove(CheckItem item) {
+        }
+
+        @Override
+        public void add(CheckItem item) {
+        }
+
+        @Override
+        public void toggle(CheckItem item) {
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link ListRepository} whose calls return right away. The futures complete with the result,
+ * or exceptionally with the {@link java.io.IOException} the blocking call would have thrown.
+ */
+public interface AsyncListRepository {
+
+    CompletableFuture<List<CheckItem>> getContent();
+
+    CompletableFuture<Void> remove(CheckItem item);
+
+    CompletableFuture<Void> add(CheckItem item);
+
+    CompletableFuture<Void> toggle(CheckItem item);
+
+    /**
+     * @return a future of false only if the content is known to be the same as returned by the
+     * last call to {@link #getContent()}; of true if it changed or if that can not be determined.
+     * @see ConditionalListRepository#hasChanged()
+     */
+    default CompletableFuture<Boolean> hasChanged() {
+        return CompletableFuture.completedFuture(true);
+    }
+
+}
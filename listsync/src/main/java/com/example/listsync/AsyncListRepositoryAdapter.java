@@ -0,0 +1,114 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Makes a blocking {@link ListRepository} asynchronous by performing its calls on an executor.
+ * The size of the executor bounds the number of calls in flight; further calls wait in its queue
+ * instead of holding a thread each. Cancelling a returned future interrupts the call. A call the
+ * executor rejects, e.g. because it was shut down, fails with an {@link IOException}.
+ */
+public class AsyncListRepositoryAdapter implements AsyncListRepository {
+
+    private final ListRepository delegate;
+    private final ExecutorService executor;
+
+    public AsyncListRepositoryAdapter(ListRepository delegate, ExecutorService executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    public ListRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public CompletableFuture<List<CheckItem>> getContent() {
+        return submit(executor, () -> delegate.getContent());
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(CheckItem item) {
+        return submit(executor, () -> {
+            delegate.remove(item);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> add(CheckItem item) {
+        return submit(executor, () -> {
+            delegate.add(item);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> toggle(CheckItem item) {
+        return submit(executor, () -> {
+            delegate.toggle(item);
+            return null;
+        });
+    }
+
+    /**
+     * Asks the delegate if it is a {@link ConditionalListRepository}, otherwise reports a change
+     * without a call.
+     */
+    @Override
+    public CompletableFuture<Boolean> hasChanged() {
+        if (!(delegate instanceof ConditionalListRepository)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return submit(executor, () -> ((ConditionalListRepository) delegate).hasChanged());
+    }
+
+    static <T> CompletableFuture<T> submit(ExecutorService executor, Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(call.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // e.g. the repository was closed; the call can be tried again once it is open
+            result.completeExceptionally(new IOException("could not perform call, executor rejected it", e));
+            return result;
+        }
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+}
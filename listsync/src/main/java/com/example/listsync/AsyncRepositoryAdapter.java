@@ -0,0 +1,51 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Makes a blocking {@link Repository} asynchronous by performing its calls, and those of its
+ * lists, on a shared executor.
+ *
+ * @see AsyncListRepositoryAdapter
+ */
+public class AsyncRepositoryAdapter implements AsyncRepository {
+
+    private final Repository<?> delegate;
+    private final ExecutorService executor;
+
+    public AsyncRepositoryAdapter(Repository<?> delegate, ExecutorService executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public AsyncListRepository getList(String name) {
+        return new AsyncListRepositoryAdapter(delegate.getList(name), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getLists() {
+        return AsyncListRepositoryAdapter.submit(executor, () -> delegate.getLists());
+    }
+
+}
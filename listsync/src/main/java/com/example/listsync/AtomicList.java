@@ -19,24 +19,38 @@
 
 package com.example.listsync;
 
+import com.google.common.collect.ImmutableList;
+
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
+/**
+ * A list that is changed under its monitor and read through immutable, versioned snapshots.
+ * A snapshot never changes once published. It is only copied when it is read after a change, so
+ * a change costs no copy of the list, and readers only take the monitor to publish a snapshot
+ * of the changes since the last read.
+ */
 public class AtomicList<T> {
 
     private final List<T> delegate;
+    private volatile Snapshot<T> snapshot;
+    private volatile long version;
+    private int batchDepth;
 
     public AtomicList(List<T> delegate) {
         this.delegate = delegate;
+        this.snapshot = new Snapshot<>(0, ImmutableList.copyOf(delegate));
     }
 
     public synchronized void addAll(Collection<T> items) {
-        this.delegate.addAll(items);
+        if (this.delegate.addAll(items)) {
+            changed();
+        }
     }
 
     public synchronized void add(T item) {
         this.delegate.add(item);
+        changed();
     }
 
     public synchronized boolean addIfAbsent(T item) {
@@ -44,11 +58,14 @@ public class AtomicList<T> {
             return false;
         }
         this.delegate.add(item);
+        changed();
         return true;
     }
 
     public synchronized void remove(T item) {
-        this.delegate.remove(item);
+        if (this.delegate.remove(item)) {
+            changed();
+        }
     }
 
     public synchronized boolean removeIfPresent(T item) {
@@ -56,12 +73,14 @@ public class AtomicList<T> {
             return false;
         }
         this.delegate.remove(item);
+        changed();
         return true;
     }
 
     public synchronized void replace(T old, T newItem) {
         this.delegate.remove(old);
         this.delegate.add(newItem);
+        changed();
     }
 
     public synchronized boolean replaceAll(List<T> newItems) {
@@ -70,11 +89,91 @@ public class AtomicList<T> {
         }
         delegate.clear();
         delegate.addAll(newItems);
+        changed();
         return true;
     }
 
+    /**
+     * Runs several changes, which no snapshot shows until all of them are done.
+     */
+    public synchronized void batch(Runnable changes) {
+        batchDepth++;
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+        }
+    }
+
+    private void changed() {
+        version++;
+    }
+
+    /**
+     * @return the snapshot of the current content. Inside a {@link #batch} this is still the one
+     * from before the batch.
+     */
+    public Snapshot<T> getSnapshot() {
+        Snapshot<T> current = snapshot;
+        if (current.getVersion() == version) {
+            return current;
+        }
+        synchronized (this) {
+            if (batchDepth == 0 && snapshot.getVersion() != version) {
+                snapshot = new Snapshot<>(version, ImmutableList.copyOf(delegate));
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return the version the next snapshot will have, without copying the list
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return delegate.size();
+    }
+
+    /**
+     * @return the items of the current snapshot. The list does not change when this AtomicList
+     * changes later on.
+     */
     public List<T> getDelegate() {
-        return Collections.unmodifiableList(delegate);
+        return getSnapshot().getItems();
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot().toString();
+    }
+
+    public static class Snapshot<T> {
+        private final long version;
+        private final List<T> items;
+
+        private Snapshot(long version, List<T> items) {
+            this.version = version;
+            this.items = items;
+        }
+
+        /**
+         * @return a number that grows with every change of the list
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        @Override
+        public String toString() {
+            return "v" + version + " " + items;
+        }
     }
 
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Turns {@link CheckItem}s into path segments and back, in single passes without regexes or
+ * intermediate strings.
+ * <p>
+ * Encoding produces the same output as {@link java.net.URLEncoder} with spaces as {@code %20}.
+ * Decoding is path decoding, so unlike {@link java.net.URLDecoder} a {@code +} stays a plus.
+ */
+final class CheckItemCodec {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String CHECKED_MARKER = "[✔]";
+    private static final String ENCODED_CHECKED_PREFIX = encode(CHECKED_MARKER + " ");
+    private static final String ENCODED_UNCHECKED_PREFIX = encode("[_] ");
+
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private CheckItemCodec() {
+    }
+
+    /**
+     * @return the item as the last segment of its URL
+     */
+    static String encodeItem(CheckItem item) {
+        String prefix = item.isChecked() ? ENCODED_CHECKED_PREFIX : ENCODED_UNCHECKED_PREFIX;
+        StringBuilder result = new StringBuilder(prefix.length() + item.getText().length() + 16);
+        result.append(prefix);
+        appendEncoded(result, item.getText());
+        return result.toString();
+    }
+
+    static String encode(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 16);
+        appendEncoded(result, value);
+        return result.toString();
+    }
+
+    private static void appendEncoded(StringBuilder result, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                result.append(c);
+            } else if (c < 0x80) {
+                appendEscaped(result, c);
+            } else {
+                int end = i + 1;
+                while (end < value.length() && !isUnreserved(value.charAt(end)) && value.charAt(end) >= 0x80) {
+                    end++;
+                }
+                for (byte b : value.substring(i, end).getBytes(Charsets.UTF_8)) {
+                    appendEscaped(result, b & 0xff);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    private static void appendEscaped(StringBuilder result, int b) {
+        result.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+    }
+
+    /**
+     * @return the item named by the last path segment of the href, or null if the href does not
+     * name an item
+     */
+    static CheckItem decodeItem(String href) {
+        int end = href.length();
+        int start = href.lastIndexOf('/', end - 1) + 1;
+        if (start == end) {
+            return null;
+        }
+        String name = decode(href, start, end);
+        int space = name.indexOf(' ');
+        if (space < 0) {
+            return null;
+        }
+        boolean checked = space == CHECKED_MARKER.length() && name.startsWith(CHECKED_MARKER);
+        return new CheckItem(name.substring(space + 1), checked);
+    }
+
+    /**
+     * Percent-decodes the given range as UTF-8. Malformed escapes are kept as they are.
+     */
+    static String decode(String value, int start, int end) {
+        int percent = value.indexOf('%', start);
+        if (percent < 0 || percent >= end) {
+            return value.substring(start, end);
+        }
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < end) {
+                int high = Character.digit(value.charAt(i + 1), 16);
+                int low = Character.digit(value.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    bytes[length++] = (byte) ((high << 4) | low);
+                    i += 2;
+                    continue;
+                }
+            }
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+                continue;
+            }
+            // characters the server did not escape are passed through as UTF-8
+            int codePoint = value.codePointAt(i);
+            byte[] encoded = new String(Character.toChars(codePoint)).getBytes(Charsets.UTF_8);
+            if (length + encoded.length > bytes.length) {
+                byte[] larger = new byte[bytes.length * 2 + encoded.length];
+                System.arraycopy(bytes, 0, larger, 0, length);
+                bytes = larger;
+            }
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+            i += Character.charCount(codePoint) - 1;
+        }
+        return new String(bytes, 0, length, Charsets.UTF_8);
+    }
+
+    /**
+     * Parses an RFC 1123 date like {@code Sun, 06 Nov 1994 08:49:37 GMT}, which is what
+     * getlastmodified holds.
+     *
+     * @return the date in milliseconds, or -1 if it is in another format
+     */
+    static long parseHttpDate(String value) {
+        if (value.length() != 29 || value.charAt(3) != ',' || !value.endsWith(" GMT")) {
+            return -1;
+        }
+        int day = number(value, 5, 7);
+        int month = -1;
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (value.regionMatches(8, MONTHS[i], 0, 3)) {
+                month = i;
+                break;
+            }
+        }
+        int year = number(value, 12, 16);
+        int hour = number(value, 17, 19);
+        int minute = number(value, 20, 22);
+        int second = number(value, 23, 25);
+        if (day < 0 || month < 0 || year < 0 || hour < 0 || minute < 0 || second < 0) {
+            return -1;
+        }
+        Calendar calendar = Calendar.getInstance(GMT);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+
+    private static int number(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+}
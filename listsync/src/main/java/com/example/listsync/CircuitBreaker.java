@@ -0,0 +1,103 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops requests to a server that keeps failing. After the given number of failures in a row the
+ * circuit opens and requests fail right away instead of waiting for a timeout. Once the open
+ * duration passed, one request is let through; if it succeeds the circuit closes again, otherwise
+ * it stays open for another period.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * Thrown instead of sending a request while the circuit is open.
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private int failures;
+    private long openUntil;
+    private boolean open;
+    private boolean probing;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * @throws OpenException if the circuit is open and no request may be sent now
+     */
+    public synchronized void acquire() throws OpenException {
+        if (!open) {
+            return;
+        }
+        if (probing || System.nanoTime() - openUntil < 0) {
+            throw new OpenException("too many failures, not contacting " + name + " for now");
+        }
+        LOGGER.info("letting one request through to {}", name);
+        probing = true;
+    }
+
+    public synchronized void succeeded() {
+        if (open) {
+            LOGGER.info("{} is reachable again", name);
+        }
+        failures = 0;
+        open = false;
+        probing = false;
+    }
+
+    public synchronized void failed() {
+        failures++;
+        probing = false;
+        if (open || failures >= failureThreshold) {
+            if (!open) {
+                LOGGER.warn("{} failed {} times in a row, pausing requests", name, failures);
+            }
+            open = true;
+            openUntil = System.nanoTime() + openNanos;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import java.io.IOException;
+
+/**
+ * A {@link ListRepository} that can tell cheaply whether its content changed since the last
+ * {@link #getContent()}, so a refresh of an idle list does not need to fetch the whole list.
+ */
+public interface ConditionalListRepository extends ListRepository {
+
+    /**
+     * @return false only if the content is known to be the same as returned by the last call to
+     * {@link #getContent()}; true if it changed or if that can not be determined.
+     */
+    boolean hasChanged() throws IOException;
+
+}
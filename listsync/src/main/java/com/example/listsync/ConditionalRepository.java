@@ -0,0 +1,36 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A {@link Repository} that can tell which of its lists changed with a single request, so lists
+ * do not need to be polled one by one.
+ */
+public interface ConditionalRepository<RepositoryType extends ListRepository> extends Repository<RepositoryType> {
+
+    /**
+     * @return a tag per list that changes whenever the content of the list changes, or null for
+     * lists where that can not be determined.
+     */
+    Map<String, String> getListTags() throws IOException;
+
+}
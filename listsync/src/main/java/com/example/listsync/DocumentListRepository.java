@@ -0,0 +1,297 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.jackrabbit.webdav.client.methods.MkColMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores a list as documents with one item per line, instead of one empty file per item.
+ * <p>
+ * Items are spread over a fixed number of shard documents by the hash of their text, so an item
+ * stays in its shard when toggled. Reading the list is one GET per shard, made conditional with
+ * If-None-Match so an unchanged shard costs a 304. Every change is a PUT of the changed shard with
+ * If-Match on the ETag it was based on. If someone else changed the shard in the meantime, the
+ * server answers 412, and the change is applied to the current content and put again.
+ * <p>
+ * Items keep the order they were added in within a shard. Lists stored this way and lists stored
+ * by {@link WebDavRepository#getList(String)} are not compatible.
+ */
+class DocumentListRepository implements ConditionalListRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DocumentListRepository.class);
+
+    static final int MAX_ATTEMPTS = 5;
+    private static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    private final WebDavTransport transport;
+    private final String collectionUrl;
+    private final Shard[] shards;
+
+    DocumentListRepository(WebDavTransport transport, String collectionUrl, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("at least one shard is needed, got " + shardCount);
+        }
+        this.transport = transport;
+        this.collectionUrl = collectionUrl;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(collectionUrl + "list-" + i + ".txt");
+        }
+    }
+
+    private interface Change {
+        /**
+         * @return whether the items changed
+         */
+        boolean applyTo(List<CheckItem> items);
+    }
+
+    private static class Shard {
+        final String url;
+        /** ETag of the cached content, or null if the document does not exist */
+        String etag;
+        List<CheckItem> items = Collections.emptyList();
+        boolean fetched;
+        boolean changedSinceRead = true;
+
+        Shard(String url) {
+            this.url = url;
+        }
+    }
+
+    @Override
+    public boolean hasChanged() throws IOException {
+        boolean changed = false;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                fetch(shard);
+                changed |= shard.changedSinceRead;
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public List<CheckItem> getContent() throws IOException {
+        List<CheckItem> content = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                fetch(shard);
+                shard.changedSinceRead = false;
+                content.addAll(shard.items);
+            }
+        }
+        return content;
+    }
+
+    @Override
+    public void add(final CheckItem item) throws IOException {
+        update(item, new Change() {
+            @Override
+            public boolean applyTo(List<CheckItem> items) {
+                return !items.contains(item) && items.add(item);
+            }
+        });
+    }
+
+    @Override
+    public void remove(final CheckItem item) throws IOException {
+        update(item, new Change() {
+            @Override
+            public boolean applyTo(List<CheckItem> items) {
+                return items.remove(item);
+            }
+        });
+    }
+
+    @Override
+    public void toggle(final CheckItem item) throws IOException {
+        update(item, new Change() {
+            @Override
+            public boolean applyTo(List<CheckItem> items) {
+                int index = items.indexOf(item);
+                CheckItem toggled = item.toggleChecked();
+                if (index < 0) {
+                    // like the file-per-item lists, make sure the toggled item exists
+                    return !items.contains(toggled) && items.add(toggled);
+                }
+                if (items.contains(toggled)) {
+                    items.remove(index);
+                } else {
+                    items.set(index, toggled);
+                }
+                return true;
+            }
+        });
+    }
+
+    private Shard shardOf(CheckItem item) {
+        return shards[(item.getText().hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    private void update(CheckItem item, Change change) throws IOException {
+        Shard shard = shardOf(item);
+        synchronized (shard) {
+            if (!shard.fetched) {
+                fetch(shard);
+            }
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                List<CheckItem> items = new ArrayList<>(shard.items);
+                if (!change.applyTo(items)) {
+                    return;
+                }
+                int status = put(shard, items);
+                if (status == 409 || status == 404) {
+                    LOGGER.info("{} does not exist yet, creating it", collectionUrl);
+                    transport.executeAndRelease(new MkColMethod(collectionUrl));
+                    transport.retried();
+                    status = put(shard, items);
+                }
+                if (status == 412) {
+                    LOGGER.info("{} changed concurrently, retrying ({}/{})", shard.url, attempt, MAX_ATTEMPTS);
+                    transport.retried();
+                    fetch(shard);
+                    continue;
+                }
+                if (status < 200 || status >= 300) {
+                    throw new RemoteStatusException("PUT " + shard.url, status);
+                }
+                return;
+            }
+            throw new IOException("gave up on " + shard.url + " after " + MAX_ATTEMPTS + " conflicting updates");
+        }
+    }
+
+    private int put(Shard shard, List<CheckItem> items) throws IOException {
+        PutMethod put = new PutMethod(shard.url);
+        if (shard.etag != null) {
+            put.setRequestHeader("If-Match", shard.etag);
+        } else {
+            put.setRequestHeader("If-None-Match", "*");
+        }
+        put.setRequestEntity(new ByteArrayRequestEntity(encode(items), CONTENT_TYPE));
+        try {
+            int status = transport.execute(put);
+            if (status >= 200 && status < 300) {
+                Header etag = put.getResponseHeader("ETag");
+                // without an ETag the next change has to be based on a fresh GET
+                shard.etag = etag == null ? null : etag.getValue();
+                shard.fetched = etag != null;
+                shard.items = items;
+            }
+            return status;
+        } finally {
+            put.releaseConnection();
+        }
+    }
+
+    /**
+     * Brings the cached content of the shard up to date.
+     */
+    private void fetch(Shard shard) throws IOException {
+        GetMethod get = new GetMethod(shard.url);
+        if (shard.fetched && shard.etag != null) {
+            get.setRequestHeader("If-None-Match", shard.etag);
+        }
+        try {
+            int status = transport.execute(get);
+            if (status == 304) {
+                return;
+            }
+            if (status == 404) {
+                shard.changedSinceRead |= !shard.items.isEmpty() || !shard.fetched;
+                shard.items = Collections.emptyList();
+                shard.etag = null;
+                shard.fetched = true;
+                return;
+            }
+            if (status != 200) {
+                throw new RemoteStatusException("GET " + shard.url, status);
+            }
+            List<CheckItem> items = decode(transport.responseBody(get));
+            Header etag = get.getResponseHeader("ETag");
+            shard.changedSinceRead |= !items.equals(shard.items) || !shard.fetched;
+            shard.items = items;
+            shard.etag = etag == null ? null : etag.getValue();
+            shard.fetched = true;
+        } finally {
+            get.releaseConnection();
+        }
+    }
+
+    static byte[] encode(List<CheckItem> items) {
+        StringBuilder document = new StringBuilder();
+        for (CheckItem item : items) {
+            document.append(item.isChecked() ? "[✔] " : "[_] ")
+                    .append(item.getText().replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r"))
+                    .append('\n');
+        }
+        return document.toString().getBytes(Charsets.UTF_8);
+    }
+
+    static List<CheckItem> decode(InputStream body) throws IOException {
+        List<CheckItem> items = new ArrayList<>();
+        if (body == null) {
+            return items;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                CheckItem item = CheckItem.fromString(unescape(line));
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static String unescape(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+        StringBuilder result = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                result.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Preconditions;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An insertion-ordered list without duplicates and with O(1) {@link #contains}, {@link #add} and
+ * {@link #remove(Object)}.
+ * <p>
+ * Removing only leaves a hole in the backing array. The holes are closed in one O(n) pass the next
+ * time an element is accessed by position, so a batch of removals followed by a read costs the
+ * same as a single {@link java.util.ArrayList#remove(Object)}. Elements can only be appended; null
+ * is not permitted.
+ */
+public class HashIndexedList<T> extends AbstractList<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<T, Integer> slotIndex = new HashMap<>();
+    private Object[] slots = new Object[INITIAL_CAPACITY];
+    private int end;
+
+    public HashIndexedList() {
+    }
+
+    public HashIndexedList(Collection<? extends T> items) {
+        addAll(items);
+    }
+
+    /**
+     * Appends the item unless the list already contains it.
+     *
+     * @return false if the item was already present
+     */
+    @Override
+    public boolean add(T item) {
+        Preconditions.checkNotNull(item);
+        if (slotIndex.containsKey(item)) {
+            return false;
+        }
+        if (end == slots.length) {
+            if (slotIndex.size() < end / 2) {
+                compact();
+            } else {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+        }
+        slots[end] = item;
+        slotIndex.put(item, end);
+        end++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object item) {
+        Integer slot = slotIndex.remove(item);
+        if (slot == null) {
+            return false;
+        }
+        slots[slot] = null;
+        modCount++;
+        if (slotIndex.isEmpty()) {
+            end = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object item) {
+        return slotIndex.containsKey(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T get(int index) {
+        Preconditions.checkElementIndex(index, size());
+        compact();
+        return (T) slots[index];
+    }
+
+    @Override
+    public int indexOf(Object item) {
+        if (!slotIndex.containsKey(item)) {
+            return -1;
+        }
+        compact();
+        return slotIndex.get(item);
+    }
+
+    @Override
+    public int lastIndexOf(Object item) {
+        return indexOf(item);
+    }
+
+    @Override
+    public int size() {
+        return slotIndex.size();
+    }
+
+    @Override
+    public void clear() {
+        slotIndex.clear();
+        Arrays.fill(slots, 0, end, null);
+        end = 0;
+        modCount++;
+    }
+
+    @Override
+    public Object[] toArray() {
+        compact();
+        return Arrays.copyOf(slots, end);
+    }
+
+    /**
+     * Closes the holes left by removals. Does not change the logical content, so it does not count
+     * as a modification for iterators.
+     */
+    private void compact() {
+        if (end == slotIndex.size()) {
+            return;
+        }
+        int target = 0;
+        for (int i = 0; i < end; i++) {
+            Object item = slots[i];
+            if (item == null) {
+                continue;
+            }
+            if (target != i) {
+                slots[target] = item;
+                @SuppressWarnings("unchecked") T typed = (T) item;
+                slotIndex.put(typed, target);
+            }
+            target++;
+        }
+        Arrays.fill(slots, target, end, null);
+        end = target;
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A repository kept in memory that behaves like a remote one: every call is a request that takes
+ * time, can be rate limited and can fail, either before it had any effect or after (as if the
+ * response got lost). Other devices changing the lists at the same time can be simulated with
+ * {@link #startOtherDevice(String, double)}.
+ * <p>
+ * Lists keep their items like {@link WebDavRepository} does: unchecked items first, then in the
+ * order they were last added or toggled. Removing a missing item does nothing, toggling one adds
+ * it toggled.
+ * <p>
+ * All random decisions come from generators seeded by {@link InMemoryRepositoryBuilder#seed(long)},
+ * so a run is repeated exactly as long as the requests arrive in the same order.
+ */
+public class InMemoryRepository implements ConditionalRepository<ConditionalListRepository>, Closeable {
+
+    /**
+     * The time a request takes.
+     */
+    public interface Latency {
+
+        Latency NONE = constant(0, TimeUnit.NANOSECONDS);
+
+        long nextNanos(Random random);
+
+        static Latency constant(long time, TimeUnit unit) {
+            final long nanos = unit.toNanos(time);
+            return random -> nanos;
+        }
+
+        static Latency uniform(long min, long max, TimeUnit unit) {
+            final long minNanos = unit.toNanos(min);
+            final long range = unit.toNanos(max) - minNanos;
+            return random -> minNanos + (long) (random.nextDouble() * range);
+        }
+
+        /**
+         * A minimum plus an exponentially distributed part, which gives the long tail of latencies
+         * seen on mobile networks.
+         */
+        static Latency exponential(long min, long mean, TimeUnit unit) {
+            final long minNanos = unit.toNanos(min);
+            final double meanNanos = unit.toNanos(mean) - minNanos;
+            return random -> minNanos + (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+        }
+    }
+
+    private final Map<String, Store> lists = new HashMap<>();
+    private final Random random;
+    private final long seed;
+    private final Latency latency;
+    private final long nanosPerRequest;
+    private final double failureRate;
+    private final double partialFailureRate;
+    private final AtomicLong requests = new AtomicLong();
+    private long nextRequestSlot;
+    private int otherDevices;
+    private ScheduledExecutorService otherDeviceExecutor;
+
+    protected InMemoryRepository(long seed, Latency latency, double maxRequestsPerSecond,
+                                 double failureRate, double partialFailureRate) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.latency = latency;
+        this.nanosPerRequest = maxRequestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond) : 0;
+        this.failureRate = failureRate;
+        this.partialFailureRate = partialFailureRate;
+    }
+
+    public static InMemoryRepositoryBuilder builder() {
+        return new InMemoryRepositoryBuilder();
+    }
+
+    @Override
+    public List<String> getLists() throws IOException {
+        return new ArrayList<>(getListTags().keySet());
+    }
+
+    @Override
+    public Map<String, String> getListTags() throws IOException {
+        Outcome outcome = request();
+        Map<String, String> result = new TreeMap<>();
+        synchronized (lists) {
+            for (Map.Entry<String, Store> entry : lists.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().tag());
+            }
+        }
+        outcome.completed();
+        return result;
+    }
+
+    @Override
+    public ConditionalListRepository getList(String name) {
+        return new InMemoryList(store(name));
+    }
+
+    /**
+     * @return the current content of the list, without a simulated request
+     */
+    public List<CheckItem> getStoredContent(String name) {
+        return store(name).content();
+    }
+
+    /**
+     * @return the number of requests made so far, including failed ones
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Starts changing the list the way another device would: the given number of times per second
+     * an item is added, or a random item is toggled or removed. Changes are applied directly,
+     * without latency or failures.
+     *
+     * @return closing it stops the device
+     */
+    public Closeable startOtherDevice(String listName, double operationsPerSecond) {
+        final Store store = store(listName);
+        final Random deviceRandom;
+        final int device;
+        synchronized (this) {
+            if (otherDeviceExecutor == null) {
+                otherDeviceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("in-memory-other-device-%d").setDaemon(true).build());
+            }
+            device = ++otherDevices;
+            deviceRandom = new Random(seed + device);
+        }
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / operationsPerSecond);
+        final ScheduledFuture<?> future = otherDeviceExecutor.scheduleAtFixedRate(new Runnable() {
+            private int added;
+
+            @Override
+            public void run() {
+                List<CheckItem> content = store.content();
+                if (content.isEmpty() || deviceRandom.nextInt(3) == 0) {
+                    store.add(new CheckItem("device " + device + " item " + added++));
+                    return;
+                }
+                CheckItem item = content.get(deviceRandom.nextInt(content.size()));
+                if (deviceRandom.nextBoolean()) {
+                    store.toggle(item);
+                } else {
+                    store.remove(item);
+                }
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+        return new Closeable() {
+            @Override
+            public void close() {
+                future.cancel(false);
+            }
+        };
+    }
+
+    /**
+     * Stops all other devices.
+     */
+    @Override
+    public synchronized void close() {
+        if (otherDeviceExecutor != null) {
+            otherDeviceExecutor.shutdownNow();
+        }
+    }
+
+    private Store store(String name) {
+        synchronized (lists) {
+            Store store = lists.get(name);
+            if (store == null) {
+                store = new Store();
+                lists.put(name, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Waits for the rate limit and the latency of a request and decides whether it fails.
+     */
+    private Outcome request() throws IOException {
+        requests.incrementAndGet();
+        long delay;
+        boolean fails;
+        boolean failsAfterwards;
+        long slot;
+        synchronized (random) {
+            delay = latency.nextNanos(random);
+            fails = random.nextDouble() < failureRate;
+            failsAfterwards = !fails && random.nextDouble() < partialFailureRate;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            slot = Math.max(now, nextRequestSlot);
+            nextRequestSlot = slot + nanosPerRequest;
+            delay += slot - now;
+        }
+        sleep(delay);
+        if (fails) {
+            throw new IOException("simulated failure");
+        }
+        return failsAfterwards ? Outcome.LOST_RESPONSE : Outcome.OK;
+    }
+
+    private static void sleep(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted during simulated request");
+        }
+    }
+
+    private enum Outcome {
+        OK, LOST_RESPONSE;
+
+        void completed() throws IOException {
+            if (this == LOST_RESPONSE) {
+                throw new IOException("simulated failure after the request was performed");
+            }
+        }
+    }
+
+    /**
+     * The items of a list, in the order they were last added or toggled.
+     */
+    private static class Store {
+        private final Set<CheckItem> items = new LinkedHashSet<>();
+        private long version;
+
+        synchronized List<CheckItem> content() {
+            List<CheckItem> result = new ArrayList<>(items.size());
+            for (CheckItem item : items) {
+                if (!item.isChecked()) {
+                    result.add(item);
+                }
+            }
+            for (CheckItem item : items) {
+                if (item.isChecked()) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+
+        synchronized String tag() {
+            return Long.toString(version);
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized void add(CheckItem item) {
+            items.remove(item);
+            items.add(item);
+            version++;
+        }
+
+        synchronized void remove(CheckItem item) {
+            if (items.remove(item)) {
+                version++;
+            }
+        }
+
+        synchronized void toggle(CheckItem item) {
+            items.remove(item);
+            add(item.toggleChecked());
+        }
+    }
+
+    private class InMemoryList implements ConditionalListRepository {
+        private final Store store;
+        private volatile long lastSeenVersion = -1;
+
+        private InMemoryList(Store store) {
+            this.store = store;
+        }
+
+        @Override
+        public boolean hasChanged() throws IOException {
+            Outcome outcome = request();
+            boolean changed = store.version() != lastSeenVersion;
+            outcome.completed();
+            return changed;
+        }
+
+        @Override
+        public List<CheckItem> getContent() throws IOException {
+            Outcome outcome = request();
+            List<CheckItem> content;
+            long version;
+            synchronized (store) {
+                content = store.content();
+                version = store.version();
+            }
+            outcome.completed();
+            lastSeenVersion = version;
+            return content;
+        }
+
+        @Override
+        public void remove(CheckItem item) throws IOException {
+            Outcome outcome = request();
+            store.remove(item);
+            outcome.completed();
+        }
+
+        @Override
+        public void add(CheckItem item) throws IOException {
+            Outcome outcome = request();
+            store.add(item);
+            outcome.completed();
+        }
+
+        @Override
+        public void toggle(CheckItem item) throws IOException {
+            Outcome outcome = request();
+            store.toggle(item);
+            outcome.completed();
+        }
+    }
+
+    public static class InMemoryRepositoryBuilder {
+        private long seed;
+        private Latency latency = Latency.NONE;
+        private double maxRequestsPerSecond;
+        private double failureRate;
+        private double partialFailureRate;
+
+        private InMemoryRepositoryBuilder() {
+        }
+
+        public InMemoryRepositoryBuilder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public InMemoryRepositoryBuilder latency(Latency latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Requests beyond this rate wait for their turn, like behind a slow link or a server that
+         * throttles clients. 0 for no limit.
+         */
+        public InMemoryRepositoryBuilder maxRequestsPerSecond(double maxRequestsPerSecond) {
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        /**
+         * The share of requests that fail without having any effect.
+         */
+        public InMemoryRepositoryBuilder failureRate(double failureRate) {
+            this.failureRate = failureRate;
+            return this;
+        }
+
+        /**
+         * The share of requests that take effect but fail anyway, as if the response got lost.
+         */
+        public InMemoryRepositoryBuilder partialFailureRate(double partialFailureRate) {
+            this.partialFailureRate = partialFailureRate;
+            return this;
+        }
+
+        public InMemoryRepository build() {
+            return new InMemoryRepository(seed, latency, maxRequestsPerSecond, failureRate, partialFailureRate);
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of a list. An item that only changed its checked-state is
+ * reported as toggled, not as removed and added. Since a list can hold an item checked and
+ * unchecked at the same time, items are matched by text and state first, and only the rest by
+ * text alone.
+ */
+public class ListDelta {
+
+    private final List<CheckItem> added;
+    private final List<CheckItem> removed;
+    private final List<CheckItem> toggled;
+    private final List<Move> moves;
+
+    private ListDelta(List<CheckItem> added, List<CheckItem> removed, List<CheckItem> toggled, List<Move> moves) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.toggled = Collections.unmodifiableList(toggled);
+        this.moves = Collections.unmodifiableList(moves);
+    }
+
+    /**
+     * Computes the delta in O(n log n). Moves are kept minimal: the items kept in place are a
+     * longest run of retained items that did not change their relative order. Like the local list
+     * of a {@link ListSyncer}, both lists are taken to hold every item once; later duplicates are
+     * ignored.
+     */
+    public static ListDelta between(List<CheckItem> before, List<CheckItem> after) {
+        before = ImmutableSet.copyOf(before).asList();
+        after = ImmutableSet.copyOf(after).asList();
+        Map<CheckItem, Integer> beforeIndex = new HashMap<>(before.size() * 2);
+        for (int i = 0; i < before.size(); i++) {
+            beforeIndex.put(before.get(i), i);
+        }
+        boolean[] matched = new boolean[before.size()];
+        int[] matchedFrom = new int[after.size()];
+        for (int i = 0; i < after.size(); i++) {
+            Integer from = beforeIndex.get(after.get(i));
+            matchedFrom[i] = from == null ? -1 : from;
+            if (from != null) {
+                matched[from] = true;
+            }
+        }
+        // whatever is left of an item with the same text was toggled
+        Map<String, Integer> unmatchedByText = new HashMap<>();
+        for (int i = 0; i < before.size(); i++) {
+            if (!matched[i]) {
+                unmatchedByText.put(before.get(i).getText(), i);
+            }
+        }
+
+        List<CheckItem> added = new ArrayList<>();
+        List<CheckItem> toggled = new ArrayList<>();
+        List<CheckItem> retained = new ArrayList<>();
+        int[] retainedFrom = new int[after.size()];
+        int[] retainedTo = new int[after.size()];
+        for (int i = 0; i < after.size(); i++) {
+            CheckItem item = after.get(i);
+            int from = matchedFrom[i];
+            if (from < 0) {
+                Integer toggledFrom = unmatchedByText.remove(item.getText());
+                if (toggledFrom == null) {
+                    added.add(item);
+                    continue;
+                }
+                from = toggledFrom;
+                matched[from] = true;
+                toggled.add(item);
+            }
+            retainedFrom[retained.size()] = from;
+            retainedTo[retained.size()] = i;
+            retained.add(item);
+        }
+        List<CheckItem> removed = new ArrayList<>();
+        for (int i = 0; i < before.size(); i++) {
+            if (!matched[i]) {
+                removed.add(before.get(i));
+            }
+        }
+
+        boolean[] inPlace = longestIncreasingRun(retainedFrom, retained.size());
+        List<Move> moves = new ArrayList<>();
+        for (int i = 0; i < retained.size(); i++) {
+            if (!inPlace[i]) {
+                moves.add(new Move(retained.get(i), retainedFrom[i], retainedTo[i]));
+            }
+        }
+        return new ListDelta(added, removed, toggled, moves);
+    }
+
+    /**
+     * @return which of the first {@code length} values belong to a longest strictly increasing
+     * subsequence
+     */
+    private static boolean[] longestIncreasingRun(int[] values, int length) {
+        int[] tailIndex = new int[length];
+        int[] predecessor = new int[length];
+        int runLength = 0;
+        for (int i = 0; i < length; i++) {
+            int low = 0;
+            int high = runLength;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tailIndex[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessor[i] = low > 0 ? tailIndex[low - 1] : -1;
+            tailIndex[low] = i;
+            if (low == runLength) {
+                runLength++;
+            }
+        }
+        boolean[] result = new boolean[length];
+        for (int i = runLength > 0 ? tailIndex[runLength - 1] : -1; i >= 0; i = predecessor[i]) {
+            result[i] = true;
+        }
+        return result;
+    }
+
+    public List<CheckItem> getAdded() {
+        return added;
+    }
+
+    public List<CheckItem> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the items whose checked-state changed, in their new state
+     */
+    public List<CheckItem> getToggled() {
+        return toggled;
+    }
+
+    public List<Move> getMoves() {
+        return moves;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && toggled.isEmpty() && moves.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ListDelta{added=" + added + ", removed=" + removed + ", toggled=" + toggled + ", moves=" + moves + "}";
+    }
+
+    public static class Move {
+        private final CheckItem item;
+        private final int from;
+        private final int to;
+
+        public Move(CheckItem item, int from, int to) {
+            this.item = item;
+            this.from = from;
+            this.to = to;
+        }
+
+        public CheckItem getItem() {
+            return item;
+        }
+
+        /** position in the old list */
+        public int getFrom() {
+            return from;
+        }
+
+        /** position in the new list */
+        public int getTo() {
+            return to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Move)) {
+                return false;
+            }
+            Move other = (Move) o;
+            return Objects.equal(item, other.item) && from == other.from && to == other.to;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{item, from, to});
+        }
+
+        @Override
+        public String toString() {
+            return item + " " + from + "->" + to;
+        }
+    }
+
+}
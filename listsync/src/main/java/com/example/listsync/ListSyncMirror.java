@@ -0,0 +1,539 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mirrors every list of a repository into a local directory and keeps them in sync, without the
+ * app. Each list is written to {@code <name>.list} with one item per line, as
+ * {@link CheckItem#toString()} prints it, whenever it changed. Pending operations and the list
+ * content are kept in {@code .state}, so a restarted mirror picks up where it stopped.
+ * <p>
+ * Edits are commands, given on standard input or as lines of files dropped into
+ * {@code commands}; those files are performed in name order at the start of the next cycle and
+ * then deleted. Commands are:
+ * <ul>
+ * <li>{@code add <list> <text>}, {@code toggle <list> <text>}, {@code remove <list> <text>}</li>
+ * <li>{@code lists}, {@code show <list>}</li>
+ * <li>{@code sync} to start the next cycle right away, {@code quit} to stop</li>
+ * </ul>
+ * List names can not contain spaces; the rest of the line is the item text. Only {@code add}
+ * creates a list; the other commands fail for a list the mirror does not know.
+ * <p>
+ * Run from the command line, every cycle prints how long it took. With
+ * {@code --edits-per-second} it also makes random edits, so it can be used to put load on a
+ * WebDAV server.
+ */
+public class ListSyncMirror implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListSyncMirror.class);
+
+    static final String LIST_SUFFIX = ".list";
+    static final String COMMAND_DIRECTORY = "commands";
+    static final String STATE_DIRECTORY = ".state";
+
+    private final File directory;
+    private final File commandDirectory;
+    private final SyncManager manager;
+    private final Map<String, List<CheckItem>> written = new HashMap<>();
+    private long cycles;
+    private boolean cycleRequested;
+    private boolean stopped;
+
+    /**
+     * @param config should keep the journal and replica in {@link #stateDirectory(File)}, so
+     *               pending operations survive a restart
+     */
+    public ListSyncMirror(Repository<?> repository, File directory, SyncConfiguration config) throws IOException {
+        this.directory = directory;
+        this.commandDirectory = new File(directory, COMMAND_DIRECTORY);
+        if (!commandDirectory.isDirectory() && !commandDirectory.mkdirs()) {
+            throw new IOException("could not create " + commandDirectory);
+        }
+        this.manager = new SyncManager(repository, config);
+    }
+
+    public static File stateDirectory(File directory) {
+        return new File(directory, STATE_DIRECTORY);
+    }
+
+    /**
+     * Performs the queued command files, refreshes the lists that changed and writes them.
+     */
+    public Cycle runCycle() {
+        long start = System.nanoTime();
+        int commands = performCommandFiles();
+        List<String> refreshed = manager.scan();
+        int pending = 0;
+        List<String> listNames = manager.getListNames();
+        for (String listName : listNames) {
+            ListSyncer syncer = manager.getSyncer(listName);
+            pending += syncer.getPendingOperations();
+            try {
+                write(listName, syncer.getLocal());
+            } catch (IOException e) {
+                LOGGER.error("could not write " + listName, e);
+            }
+        }
+        removeDeleted(listNames);
+        synchronized (this) {
+            cycles++;
+            return new Cycle(cycles, listNames.size(), refreshed.size(), commands, pending, System.nanoTime() - start);
+        }
+    }
+
+    private void write(String listName, List<CheckItem> items) throws IOException {
+        if (items.equals(written.get(listName))) {
+            return;
+        }
+        File file = new File(directory, encode(listName) + LIST_SUFFIX);
+        File temp = new File(directory, "." + file.getName() + ".tmp");
+        List<String> lines = new ArrayList<>(items.size());
+        for (CheckItem item : items) {
+            lines.add(item.toString());
+        }
+        Files.write(temp.toPath(), lines, Charsets.UTF_8);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        written.put(listName, items);
+    }
+
+    /**
+     * Removes the files of lists the last scan found deleted remotely.
+     */
+    private void removeDeleted(List<String> listNames) {
+        Iterator<String> iterator = written.keySet().iterator();
+        while (iterator.hasNext()) {
+            String listName = iterator.next();
+            if (listNames.contains(listName)) {
+                continue;
+            }
+            File file = new File(directory, encode(listName) + LIST_SUFFIX);
+            if (!file.delete() && file.exists()) {
+                LOGGER.error("could not delete {}", file);
+                continue;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static String encode(String listName) {
+        try {
+            return URLEncoder.encode(listName, Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the number of commands performed. Files whose name starts with a dot are skipped,
+     * so they can be written under such a name and renamed once complete.
+     */
+    private int performCommandFiles() {
+        File[] files = commandDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        Arrays.sort(files);
+        int performed = 0;
+        for (File file : files) {
+            if (!file.isFile() || file.getName().startsWith(".")) {
+                continue;
+            }
+            try {
+                for (String line : Files.readAllLines(file.toPath(), Charsets.UTF_8)) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    performed++;
+                    try {
+                        LOGGER.info("{}: {} -> {}", file.getName(), line, execute(line));
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.warn("{}: {} failed: {}", file.getName(), line, e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("could not read " + file, e);
+                continue;
+            }
+            if (!file.delete()) {
+                LOGGER.error("could not delete {}, its commands will be performed again", file);
+            }
+        }
+        return performed;
+    }
+
+    /**
+     * @return what to answer the command with
+     * @throws IllegalArgumentException if the command is unknown, incomplete or refers to an item
+     *                                  that is not on the list
+     */
+    public String execute(String command) {
+        String[] parts = command.trim().split("\\s+", 3);
+        switch (parts[0]) {
+            case "add":
+                syncer(parts).add(new CheckItem(text(parts)));
+                return "ok";
+            case "toggle":
+                existingSyncer(parts).toggle(find(parts));
+                return "ok";
+            case "remove":
+                existingSyncer(parts).remove(find(parts));
+                return "ok";
+            case "show":
+                return Joiner.on('\n').join(existingSyncer(parts).getLocal());
+            case "lists":
+                return Joiner.on('\n').join(manager.getListNames());
+            case "sync":
+                requestCycle();
+                return "ok";
+            case "quit":
+                stop();
+                return "bye";
+            default:
+                throw new IllegalArgumentException("unknown command " + parts[0]);
+        }
+    }
+
+    private ListSyncer syncer(String[] parts) {
+        return manager.getSyncer(listName(parts));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the list is not known, instead of creating it
+     */
+    private ListSyncer existingSyncer(String[] parts) {
+        ListSyncer syncer = manager.findSyncer(listName(parts));
+        if (syncer == null) {
+            throw new IllegalArgumentException("no list " + parts[1]);
+        }
+        return syncer;
+    }
+
+    private static String listName(String[] parts) {
+        if (parts.length < 2) {
+            throw new IllegalArgumentException(parts[0] + " needs a list name");
+        }
+        return parts[1];
+    }
+
+    private static String text(String[] parts) {
+        if (parts.length < 3) {
+            throw new IllegalArgumentException(parts[0] + " needs a list name and an item text");
+        }
+        return parts[2];
+    }
+
+    private CheckItem find(String[] parts) {
+        String text = text(parts);
+        for (CheckItem item : existingSyncer(parts).getLocal()) {
+            if (item.getText().equals(text)) {
+                return item;
+            }
+        }
+        throw new IllegalArgumentException("no item " + text + " on " + parts[1]);
+    }
+
+    /**
+     * Adds, toggles or removes a random item on a random list.
+     */
+    public void editRandomly(Random random) {
+        List<String> listNames = manager.getListNames();
+        if (listNames.isEmpty()) {
+            return;
+        }
+        ListSyncer syncer = manager.getSyncer(listNames.get(random.nextInt(listNames.size())));
+        List<CheckItem> items = syncer.getLocal();
+        int choice = random.nextInt(4);
+        if (items.isEmpty() || choice < 2) {
+            syncer.add(new CheckItem("load " + Long.toHexString(random.nextLong())));
+        } else if (choice == 2) {
+            syncer.toggle(items.get(random.nextInt(items.size())));
+        } else {
+            syncer.remove(items.get(random.nextInt(items.size())));
+        }
+    }
+
+    public synchronized void requestCycle() {
+        cycleRequested = true;
+        notifyAll();
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the next cycle is due or requested.
+     *
+     * @return false if the mirror was stopped
+     */
+    public synchronized boolean awaitNextCycle(long time, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        long remaining;
+        while (!stopped && !cycleRequested && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        cycleRequested = false;
+        return !stopped;
+    }
+
+    @Override
+    public void close() {
+        manager.close();
+    }
+
+    public static class Cycle {
+        private final long number;
+        private final int lists;
+        private final int refreshed;
+        private final int commands;
+        private final int pending;
+        private final long nanos;
+
+        private Cycle(long number, int lists, int refreshed, int commands, int pending, long nanos) {
+            this.number = number;
+            this.lists = lists;
+            this.refreshed = refreshed;
+            this.commands = commands;
+            this.pending = pending;
+            this.nanos = nanos;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        public int getLists() {
+            return lists;
+        }
+
+        public int getRefreshed() {
+            return refreshed;
+        }
+
+        public int getCommands() {
+            return commands;
+        }
+
+        /** operations not yet performed remotely when the cycle ended */
+        public int getPending() {
+            return pending;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "cycle %d: %d lists, %d refreshed, %d commands, %d pending, %.1f ms",
+                    number, lists, refreshed, commands, pending, nanos / 1e6);
+        }
+    }
+
+    /**
+     * Options: {@code --host <address> --directory <dir> [--path <watchpath>] [--port <n>] [--ssl]
+     * [--user <name>] [--password <password>] [--interval <seconds>] [--parallelism <lists>]
+     * [--connections <n>] [--cycles <n>] [--edits-per-second <n>] [--virtual-threads]}
+     * <p>
+     * The password can also be given in the environment variable {@code LISTSYNC_PASSWORD}, so it
+     * does not show up in the process list. Without {@code --cycles} the mirror runs until it is
+     * told to quit.
+     */
+    public static void main(String[] args) throws Exception {
+        String host = null;
+        String path = "";
+        Integer port = null;
+        boolean ssl = false;
+        String user = null;
+        String password = System.getenv("LISTSYNC_PASSWORD");
+        File directory = null;
+        long interval = 30;
+        int parallelism = SyncConfiguration.DEFAULT_MAX_CONCURRENT_REFRESHES;
+        int connections = WebDavConfiguration.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        long maxCycles = 0;
+        double editsPerSecond = 0;
+        boolean virtualThreads = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--ssl":
+                    ssl = true;
+                    continue;
+                case "--virtual-threads":
+                    virtualThreads = true;
+                    continue;
+                default:
+                    break;
+            }
+            if (i + 1 >= args.length) {
+                usage("missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--path":
+                    path = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--user":
+                    user = value;
+                    break;
+                case "--password":
+                    password = value;
+                    break;
+                case "--directory":
+                    directory = new File(value);
+                    break;
+                case "--interval":
+                    interval = Long.parseLong(value);
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(value);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(value);
+                    break;
+                case "--cycles":
+                    maxCycles = Long.parseLong(value);
+                    break;
+                case "--edits-per-second":
+                    editsPerSecond = Double.parseDouble(value);
+                    break;
+                default:
+                    usage("unknown option " + args[i - 1]);
+            }
+        }
+        if (host == null || directory == null) {
+            usage("--host and --directory are required");
+        }
+
+        WebDavConfiguration webDavConfig = WebDavConfiguration.builder(host, path)
+                .usingSSL(ssl)
+                .customPort(port)
+                .credentials(user, password)
+                .connectionPool(Math.max(connections, WebDavConfiguration.DEFAULT_MAX_CONNECTIONS), connections)
+                .build();
+        File state = stateDirectory(directory);
+        SyncConfiguration syncConfig = SyncConfiguration.builder()
+                .journalDirectory(state)
+                .replicaDirectory(state)
+                .maxConcurrentRefreshes(parallelism)
+                .coldRefreshInterval(0, TimeUnit.MILLISECONDS)
+                .virtualThreads(virtualThreads)
+                .build();
+        WebDavRepository repository = new WebDavRepository(webDavConfig);
+        final ListSyncMirror mirror = new ListSyncMirror(repository, directory, syncConfig);
+
+        Thread commands = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readCommands(mirror);
+            }
+        }, "listsync-mirror-commands");
+        commands.setDaemon(true);
+        commands.start();
+
+        ScheduledExecutorService editor = null;
+        if (editsPerSecond > 0) {
+            editor = Executors.newSingleThreadScheduledExecutor();
+            final Random random = new Random();
+            editor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    mirror.editRandomly(random);
+                }
+            }, 0, Math.max(1, (long) (TimeUnit.SECONDS.toMicros(1) / editsPerSecond)), TimeUnit.MICROSECONDS);
+        }
+
+        try {
+            Cycle cycle;
+            do {
+                cycle = mirror.runCycle();
+                System.out.println(cycle);
+            } while ((maxCycles == 0 || cycle.getNumber() < maxCycles) && mirror.awaitNextCycle(interval, TimeUnit.SECONDS));
+        } finally {
+            if (editor != null) {
+                // not interrupted, that would close the journal under an edit
+                editor.shutdown();
+                editor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            mirror.close();
+            repository.close();
+        }
+        System.exit(0);
+    }
+
+    private static void readCommands(ListSyncMirror mirror) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, Charsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    System.out.println(mirror.execute(line));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("error: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("could not read commands", e);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("usage: --host <address> --directory <dir> [--path <watchpath>] [--port <n>] [--ssl]"
+                + " [--user <name>] [--password <password>] [--interval <seconds>] [--parallelism <lists>]"
+                + " [--connections <n>] [--cycles <n>] [--edits-per-second <n>] [--virtual-threads]");
+        System.exit(2);
+    }
+
+}
@@ -19,135 +19,622 @@
 
 package com.example.listsync;
 
-import com.google.common.base.Function;
-import com.google.common.collect.*;
+import com.example.listsync.metrics.Counter;
+import com.example.listsync.metrics.Gauge;
+import com.example.listsync.metrics.Histogram;
+import com.example.listsync.metrics.MetricsRegistry;
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class ListSyncer implements Runnable {
+public class ListSyncer implements Runnable, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ListSyncer.class);
 
-    private final AtomicList<CheckItem> local = new AtomicList<>(new ArrayList<CheckItem>());
-    private final Queue<Operation> operationQueue = new LinkedList<>();
-    private final ListRepository remote;
+    private final AtomicList<CheckItem> local = new AtomicList<>(new HashIndexedList<CheckItem>());
+    private final OperationLog operationLog = new OperationLog();
+    private final AsyncListRepository remote;
+    private final ExecutorService operationExecutor;
+    private final OperationJournal journal;
+    private final File replicaDirectory;
+    private final AtomicBoolean replicaLoaded = new AtomicBoolean();
+    /** the items the syncer was created with, until the replica is loaded; guarded by local */
+    private List<CheckItem> initialItems;
+    private volatile LocalReplica replica;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    /** set when the server refused an operation, whose local change only a refresh reverts */
+    private final AtomicBoolean refreshNeeded = new AtomicBoolean();
+
+    private final Map<OperationJournal.Type, Histogram> operationLatencies = new EnumMap<>(OperationJournal.Type.class);
+    private final Histogram cycleLatency;
+    private final Counter queueDepth;
+    private final Counter queued;
+    private final Counter dispatched;
+    private final Counter refreshChanged;
+    private final Counter refreshUnchanged;
+    private final Counter retried;
+    private final Counter rejected;
+    private final long retryInitialBackoff;
+    private final long retryMaxBackoff;
 
     private final List<Consumer<List<CheckItem>>> changeListeners = new ArrayList<>();
+    private final List<Consumer<ListDelta>> deltaListeners = new ArrayList<>();
     private final List<Consumer<Exception>> exceptionHandlers = new LinkedList<>();
     private boolean running;
+    private volatile boolean lastSyncFailed;
+    private volatile boolean closed;
+    private final Object syncLock = new Object();
 
     public ListSyncer(ListRepository remote) {
-        this.remote = remote;
+        this(remote, SyncConfiguration.defaults());
     }
 
     public ListSyncer(List<CheckItem> local, ListRepository remote) {
-        this.local.addAll(local);
+        this(local, remote, SyncConfiguration.defaults());
+    }
+
+    public ListSyncer(ListRepository remote, SyncConfiguration config) {
+        this(Collections.<CheckItem>emptyList(), remote, config);
+    }
+
+    /**
+     * Performs the calls to a blocking remote on the operation executor of the configuration.
+     */
+    public ListSyncer(List<CheckItem> local, ListRepository remote, SyncConfiguration config) {
+        this(local, new AsyncListRepositoryAdapter(remote, config.getOperationExecutor()), config);
+    }
+
+    public ListSyncer(AsyncListRepository remote) {
+        this(remote, SyncConfiguration.defaults());
+    }
+
+    public ListSyncer(AsyncListRepository remote, SyncConfiguration config) {
+        this(Collections.<CheckItem>emptyList(), remote, config);
+    }
+
+    /**
+     * The remote calls of an asynchronous remote do not occupy a thread of the syncer while they
+     * are in flight, so the operation executor is only used to compact the replica.
+     */
+    public ListSyncer(List<CheckItem> local, AsyncListRepository remote, SyncConfiguration config) {
+        MetricsRegistry metrics = config.getMetrics();
+        for (OperationJournal.Type type : OperationJournal.Type.values()) {
+            operationLatencies.put(type, metrics.histogram(SyncMetrics.OPERATION + type.name().toLowerCase(Locale.ROOT)));
+        }
+        this.cycleLatency = metrics.histogram(SyncMetrics.CYCLE);
+        this.queueDepth = metrics.counter(SyncMetrics.QUEUE_DEPTH);
+        this.queued = metrics.counter(SyncMetrics.QUEUED);
+        this.dispatched = metrics.counter(SyncMetrics.DISPATCHED);
+        this.refreshChanged = metrics.counter(SyncMetrics.REFRESH_CHANGED);
+        this.refreshUnchanged = metrics.counter(SyncMetrics.REFRESH_UNCHANGED);
+        this.retried = metrics.counter(SyncMetrics.RETRIED);
+        this.rejected = metrics.counter(SyncMetrics.REJECTED);
+        this.retryInitialBackoff = TimeUnit.MILLISECONDS.toNanos(config.getRetryInitialBackoff());
+        this.retryMaxBackoff = TimeUnit.MILLISECONDS.toNanos(config.getRetryMaxBackoff());
+        metrics.gauge(SyncMetrics.COMPACTION_RATIO, compactionRatio(queued, dispatched, queueDepth));
         this.remote = remote;
+        this.operationExecutor = config.getOperationExecutor();
+        this.replicaDirectory = config.getReplicaDirectory();
+        this.initialItems = new ArrayList<>(local);
+        this.local.addAll(local);
+        this.journal = openJournal(config.getJournalDirectory());
+        if (journal != null) {
+            replayJournal();
+        }
     }
 
-    public void add(final CheckItem item) {
-        if (!local.addIfAbsent(item)) {
+    /**
+     * The share of queued operations that were merged away, i.e. neither performed nor still
+     * pending. Does not refer to a syncer, so the registry does not keep one alive.
+     */
+    private static Gauge compactionRatio(final Counter queued, final Counter dispatched, final Counter queueDepth) {
+        return new Gauge() {
+            @Override
+            public double getValue() {
+                long total = queued.get();
+                if (total == 0) {
+                    return 0;
+                }
+                return (double) (total - dispatched.get() - queueDepth.get()) / total;
+            }
+        };
+    }
+
+    /**
+     * Opens the replica and fills the local list with its content, so the list can be shown before
+     * remote is reached. The items the syncer was created with and the changes made since are
+     * applied on top. The first sync does this, so the replica is not read on the thread that
+     * creates the syncer; call it earlier from a background thread to show the list sooner.
+     */
+    public void loadReplica() {
+        if (replicaDirectory == null || !replicaLoaded.compareAndSet(false, true)) {
+            return;
+        }
+        LocalReplica opened;
+        final List<CheckItem> stored;
+        try {
+            opened = LocalReplica.open(replicaDirectory);
+            stored = opened.load();
+        } catch (IOException e) {
+            LOGGER.error("could not load replica in " + replicaDirectory + ", starting with an empty list", e);
+            return;
+        }
+        boolean changed;
+        synchronized (local) {
+            if (closed) {
+                closeQuietly(opened);
+                return;
+            }
+            changed = !stored.isEmpty();
+            local.batch(new Runnable() {
+                @Override
+                public void run() {
+                    local.replaceAll(stored);
+                    local.addAll(initialItems);
+                    for (Operation operation : operationLog.pending()) {
+                        operation.performLocal();
+                    }
+                }
+            });
+            initialItems = null;
+            replica = opened;
+        }
+        if (!local.getDelegate().equals(stored)) {
+            scheduleCompaction();
+        }
+        if (changed) {
+            notifyListChanged();
+        }
+    }
+
+    private static void closeQuietly(LocalReplica replica) {
+        try {
+            replica.close();
+        } catch (IOException e) {
+            LOGGER.error("could not close replica", e);
+        }
+    }
+
+    private static OperationJournal openJournal(File directory) {
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return OperationJournal.open(directory);
+        } catch (IOException e) {
+            LOGGER.error("could not open journal in " + directory + ", pending operations are only kept in memory", e);
+            return null;
+        }
+    }
+
+    /**
+     * Re-applies the operations that were still pending when the process died, locally and to the
+     * queue.
+     */
+    private void replayJournal() {
+        final List<OperationJournal.Entry> entries;
+        try {
+            entries = journal.replay();
+        } catch (IOException e) {
+            LOGGER.error("could not replay journal", e);
             return;
         }
-        LOGGER.info("adding; running? {}", running);
-        operationQueue.add(new AddOperation(item));
+        local.batch(new Runnable() {
+            @Override
+            public void run() {
+                for (OperationJournal.Entry entry : entries) {
+                    Operation operation = operationFor(entry);
+                    operation.performLocal();
+                    operationLog.add(operation);
+                }
+            }
+        });
+        queued.add(entries.size());
+        queueDepth.add(operationLog.size());
+    }
+
+    private Operation operationFor(OperationJournal.Entry entry) {
+        switch (entry.getType()) {
+            case ADD:
+                return new AddOperation(entry.getItem());
+            case REMOVE:
+                return new RemoveOperation(entry.getItem());
+            case TOGGLE:
+                return new ToggleOperation(entry.getItem());
+            default:
+                throw new IllegalStateException("unknown journal entry " + entry);
+        }
+    }
+
+    /*
+     * Local changes are recorded in the replica and the journal while holding the list's monitor,
+     * so the replica sees them in the same order as the list and none can slip in while a
+     * compaction starts or the syncer is closed. Once it is closed, changes are ignored.
+     */
+
+    public void add(final CheckItem item) {
+        synchronized (local) {
+            if (closed || !local.addIfAbsent(item)) {
+                return;
+            }
+            replicaChanged(OperationJournal.Type.ADD, item);
+            LOGGER.info("adding; running? {}", running);
+            enqueue(new AddOperation(item));
+        }
     }
 
     public void toggle(final CheckItem item) {
-        local.replace(item, item.toggleChecked());
-        operationQueue.add(new ToggleOperation(item));
+        synchronized (local) {
+            if (closed) {
+                return;
+            }
+            local.replace(item, item.toggleChecked());
+            replicaChanged(OperationJournal.Type.REMOVE, item);
+            replicaChanged(OperationJournal.Type.ADD, item.toggleChecked());
+            enqueue(new ToggleOperation(item));
+        }
     }
 
     public void remove(CheckItem item) {
-        if (!local.removeIfPresent(item)) {
+        synchronized (local) {
+            if (closed || !local.removeIfPresent(item)) {
+                return;
+            }
+            replicaChanged(OperationJournal.Type.REMOVE, item);
+            enqueue(new RemoveOperation(item));
+        }
+    }
+
+    private void replicaChanged(OperationJournal.Type type, CheckItem item) {
+        if (replica == null) {
+            return;
+        }
+        try {
+            if (type == OperationJournal.Type.ADD) {
+                replica.added(item);
+            } else {
+                replica.removed(item);
+            }
+        } catch (IOException e) {
+            notifyException(e);
+        }
+        if (replica.needsCompaction(local.size())) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Replaces the replica's snapshot and change logs with a snapshot of the current list in the
+     * background. At most one compaction is scheduled at a time, and none once the syncer is
+     * closed.
+     */
+    private void scheduleCompaction() {
+        if (closed || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        operationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compactionScheduled.set(false);
+                try {
+                    LocalReplica replica;
+                    long generation;
+                    List<CheckItem> items;
+                    synchronized (local) {
+                        replica = ListSyncer.this.replica;
+                        if (closed) {
+                            return;
+                        }
+                        generation = replica.rotate();
+                        items = local.getDelegate();
+                    }
+                    // close() closes the replica while holding its monitor
+                    synchronized (replica) {
+                        if (closed) {
+                            return;
+                        }
+                        replica.writeSnapshot(generation, items);
+                    }
+                } catch (IOException e) {
+                    notifyException(e);
+                }
+            }
+        });
+    }
+
+    private void enqueue(Operation operation) {
+        synchronized (operationLog) {
+            int before = operationLog.size();
+            operationLog.add(operation);
+            queued.inc();
+            queueDepth.add(operationLog.size() - before);
+            if (journal != null) {
+                try {
+                    journal.append(operation.getJournalType(), operation.item);
+                } catch (IOException e) {
+                    notifyException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the operations that have been performed remotely by rewriting the journal with the
+     * ones that are still pending. Holds the log's monitor, so no operation can be queued between
+     * taking the pending ones and writing them.
+     */
+    private void checkpointJournal() {
+        if (journal == null) {
             return;
         }
-        operationQueue.add(new RemoveOperation(item));
+        synchronized (operationLog) {
+            List<OperationJournal.Entry> entries = new ArrayList<>();
+            for (Operation operation : operationLog.pending()) {
+                entries.add(new OperationJournal.Entry(operation.getJournalType(), operation.item));
+            }
+            try {
+                journal.rewrite(entries);
+            } catch (IOException e) {
+                notifyException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of operations waiting to be performed remotely. This is at most one per
+     * item, since operations on the same item are merged as they are queued.
+     */
+    public int getPendingOperations() {
+        return operationLog.size();
     }
 
+    /**
+     * @return an immutable snapshot of the local list. It does not change when the list changes
+     * later on. Every item is in it once, even if remote lists it more than once.
+     */
     public List<CheckItem> getLocal() {
         return local.getDelegate();
     }
 
+    public AtomicList.Snapshot<CheckItem> getSnapshot() {
+        return local.getSnapshot();
+    }
+
+    /**
+     * @return whether the local list changed after the snapshot with the given version was taken
+     */
+    public boolean hasChangedSince(long version) {
+        return local.getVersion() != version;
+    }
+
     @Override
     public void run() {
+        sync();
+    }
+
+    /**
+     * Performs the pending operations remotely and refreshes the local list from remote.
+     *
+     * @return whether there was anything to do, i.e. operations were pending or remote changed
+     */
+    protected boolean sync() {
+        return sync(true);
+    }
+
+    /**
+     * @param checkForChanges false to fetch the remote content without asking remote whether it
+     *                        changed first, because the caller already knows it did
+     */
+    boolean sync(boolean checkForChanges) {
+        // close() waits for a running sync before it closes the journal and the replica
+        synchronized (syncLock) {
+            if (closed) {
+                return false;
+            }
+            return performSync(checkForChanges);
+        }
+    }
+
+    private boolean performSync(boolean checkForChanges) {
         running = true;
+        lastSyncFailed = false;
         LOGGER.info("running ListSyncer");
+        long start = System.nanoTime();
+        boolean active = false;
+        loadReplica();
         try {
-            Operation nextOp;
-            while((nextOp = operationQueue.poll()) != null) {
-                Thread opThread = new Thread(new OperationTask(nextOp));
-                opThread.start();
-                Thread compactThread = new Thread(new CompacterTask());
-                compactThread.start();
-                LOGGER.info("waiting for Threads to join");
-                opThread.join();
-                compactThread.join();
-            }
-            if (local.replaceAll(remote.getContent())) {
-                LOGGER.info("change detected: {}", local);
-                synchronized (operationQueue) {
-                    for (Operation operation : operationQueue) {
+            if (journal != null) {
+                journal.sync();
+            }
+            List<Operation> batch;
+            // operations that fail during this cycle wait for the next one
+            while (!(batch = operationLog.drainReady(start)).isEmpty()) {
+                active = true;
+                queueDepth.add(-batch.size());
+                dispatched.add(batch.size());
+                dispatch(batch);
+                checkpointJournal();
+            }
+            if (checkForChanges && !refreshNeeded.get() && !remoteChanged()) {
+                LOGGER.info("remote unchanged");
+                refreshUnchanged.inc();
+                return active;
+            }
+            List<CheckItem> before = local.getDelegate();
+            // the local list holds every item once, so a remote list with duplicates would never
+            // compare equal and every refresh would report a change
+            final List<CheckItem> content = ImmutableSet.copyOf(await(remote.getContent())).asList();
+            refreshNeeded.set(false);
+            final boolean[] changed = new boolean[1];
+            local.batch(new Runnable() {
+                @Override
+                public void run() {
+                    changed[0] = local.replaceAll(content);
+                    if (!changed[0]) {
+                        return;
+                    }
+                    for (Operation operation : operationLog.pending()) {
                         operation.performLocal();
                     }
                 }
+            });
+            (changed[0] ? refreshChanged : refreshUnchanged).inc();
+            if (changed[0]) {
+                active = true;
+                LOGGER.info("change detected: {}", local);
+                if (replica != null) {
+                    scheduleCompaction();
+                }
                 notifyListChanged();
+                if (!deltaListeners.isEmpty()) {
+                    notifyDelta(ListDelta.between(before, local.getDelegate()));
+                }
             }
         } catch (IOException e) {
+            lastSyncFailed = true;
             notifyException(e);
         } catch (InterruptedException e) {
+            lastSyncFailed = true;
             Thread.currentThread().interrupt();
             LOGGER.info("{} interrupted", Thread.currentThread().getName());
             // ignore, done anyway
         } finally {
             LOGGER.info("DONE");
+            cycleLatency.recordSince(start);
             running = false;
         }
+        return active;
     }
 
-    private List<Operation> compactOperations(List<Operation> copy) {
-        Multimap<String,Operation> operations = Multimaps.index(copy, new Function<Operation, String>() {
-            @Override
-            public String apply(Operation input) {
-                return input.item.getText();
+    /**
+     * Performs a batch of operations concurrently. The batch holds at most one operation per item,
+     * and the next batch is only drained once this one is done, so operations on the same item are
+     * still performed in order.
+     */
+    private void dispatch(List<Operation> batch) throws InterruptedException {
+        LOGGER.info("dispatching {} operations", batch.size());
+        List<CompletableFuture<Void>> requests = new ArrayList<>(batch.size());
+        List<CompletableFuture<Void>> completions = new ArrayList<>(batch.size());
+        for (Operation operation : batch) {
+            long start = System.nanoTime();
+            CompletableFuture<Void> request = perform(operation);
+            requests.add(request);
+            completions.add(completion(operation, request, start));
+        }
+        try {
+            CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[completions.size()])).get();
+        } catch (InterruptedException e) {
+            abandon(batch, requests);
+            throw e;
+        } catch (ExecutionException e) {
+            // only an Error gets here, see completion()
+            abandon(batch, requests);
+            throw (Error) e.getCause();
+        }
+    }
+
+    /**
+     * Cancels the requests that are still in flight and queues their operations again, since it
+     * is unknown whether remote performed them. Operations that completed in the meantime were
+     * already recorded or queued for a retry by their completion.
+     */
+    private void abandon(List<Operation> batch, List<CompletableFuture<Void>> requests) {
+        for (int i = 0; i < requests.size(); i++) {
+            if (requests.get(i).cancel(true)) {
+                LOGGER.info("abandoned {}, queueing it again", batch.get(i));
+                requeue(batch.get(i));
+            }
+        }
+    }
+
+    private CompletableFuture<Void> perform(Operation operation) {
+        LOGGER.info("performing operation {}", operation);
+        try {
+            return operation.performRemote();
+        } catch (RuntimeException e) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    /**
+     * Records the latency of a successful operation and queues a failed one for a retry. An
+     * unexpected exception is retried like an {@link IOException}; only an {@link Error}
+     * completes the returned future exceptionally.
+     */
+    private CompletableFuture<Void> completion(Operation operation, CompletableFuture<Void> request, long start) {
+        return request.handle((value, e) -> {
+            if (e == null) {
+                operationLatencies.get(operation.getJournalType()).recordSince(start);
+                LOGGER.info("operation done {}", operation);
+                return null;
             }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CancellationException) {
+                // abandoned, see abandon()
+                return null;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            failed(operation, (Exception) cause);
+            return null;
         });
-        for (Map.Entry<String, Collection<Operation>> entry : operations.asMap().entrySet()) {
-            Collection<Operation> itemOps = entry.getValue();
-            LOGGER.info("{} has {} operations", entry.getKey(), itemOps.size());
-            if (itemOps.size() <= 1) {
-                continue;
-            }
-            Iterator<Operation> iterator = itemOps.iterator();
-            Operation current = iterator.next();
-            while(iterator.hasNext()) {
-                Operation next = iterator.next();
-                Operation merged = current.merge(next);
-                if (merged == current) {
-                    LOGGER.info("{} invalidates {}", current, next);
-                    copy.remove(next);
-                } else if (merged == next) {
-                    LOGGER.info("{} supersedes {}", next, current);
-                    copy.remove(current);
-                } else {
-                    LOGGER.info("{} and {} have been merged to {}", current, next, merged);
-                    copy.remove(current);
-                    int i = copy.indexOf(next);
-                    copy.set(i, merged);
-                }
-                current = merged;
+    }
+
+    private boolean remoteChanged() throws IOException, InterruptedException {
+        return await(remote.hasChanged());
+    }
+
+    /**
+     * Waits for a call to remote, and cancels it if the waiting thread is interrupted.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
         }
-        return copy;
     }
 
     public void registerChangeListener(Consumer<List<CheckItem>> mock) {
         changeListeners.add(mock);
     }
 
+    /**
+     * Registers a listener that is only told what changed on a remote refresh, instead of being
+     * handed the whole list like the listeners registered with {@link #registerChangeListener}.
+     */
+    public void registerDeltaListener(Consumer<ListDelta> listener) {
+        deltaListeners.add(listener);
+    }
+
     public void registerExceptionHandler(Consumer<Exception> handler) {
         exceptionHandlers.add(handler);
     }
@@ -158,6 +645,15 @@ public class ListSyncer implements Runnable {
         }
     }
 
+    protected void notifyDelta(ListDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        for (Consumer<ListDelta> deltaListener : deltaListeners) {
+            deltaListener.consume(delta);
+        }
+    }
+
     protected void notifyException(Exception e) {
         LOGGER.error("notifying of Exception", e);
         for (Consumer<Exception> exceptionHandler : exceptionHandlers) {
@@ -165,21 +661,64 @@ public class ListSyncer implements Runnable {
         }
     }
 
+    /**
+     * @return whether the last sync could not ask remote for changes or fetch its content
+     */
+    boolean lastSyncFailed() {
+        return lastSyncFailed;
+    }
+
     public boolean isRunning() {
         return running;
     }
 
+    @Override
+    public void close() {
+        LocalReplica replica;
+        synchronized (local) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            replica = this.replica;
+        }
+        synchronized (syncLock) {
+            // whatever is still pending stays in the journal, but is no longer queued in this process
+            queueDepth.add(-operationLog.size());
+            try {
+                if (journal != null) {
+                    journal.close();
+                }
+                if (replica != null) {
+                    synchronized (replica) {
+                        replica.close();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("could not close journal or replica", e);
+            }
+        }
+    }
+
     abstract class Operation {
 
         protected final CheckItem item;
+        private int failures;
+        private long retryAt;
 
         protected Operation(CheckItem item) {
             this.item = item;
         }
 
-        abstract void performRemote() throws IOException;
+        /**
+         * @return the call to remote, which completes exceptionally with an {@link IOException}
+         * if the operation failed
+         */
+        abstract CompletableFuture<Void> performRemote();
 
-        abstract void performLocal() throws IOException;
+        abstract void performLocal();
+
+        abstract OperationJournal.Type getJournalType();
 
         public Operation merge(Operation other) {
             if (other instanceof Noop) {
@@ -188,6 +727,34 @@ public class ListSyncer implements Runnable {
             throw new IllegalStateException("unknown Operation-type " + other.getClass());
         }
 
+        boolean isNoop() {
+            return false;
+        }
+
+        /**
+         * @return whether the operation is not waiting for a retry at the given
+         * {@link System#nanoTime()}
+         */
+        boolean isReady(long now) {
+            return failures == 0 || retryAt - now <= 0;
+        }
+
+        /**
+         * Takes over the retry state of an operation this one was merged from, so merging does not
+         * cut a backoff short.
+         */
+        void inheritRetry(Operation other) {
+            if (other.failures > failures) {
+                failures = other.failures;
+                retryAt = other.retryAt;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + item + ")";
+        }
+
     }
 
     private class AddOperation extends Operation {
@@ -197,15 +764,20 @@ public class ListSyncer implements Runnable {
         }
 
         @Override
-        public void performRemote() throws IOException {
-            remote.add(item);
+        public CompletableFuture<Void> performRemote() {
+            return remote.add(item);
         }
 
         @Override
-        void performLocal() throws IOException {
+        void performLocal() {
             local.add(item);
         }
 
+        @Override
+        OperationJournal.Type getJournalType() {
+            return OperationJournal.Type.ADD;
+        }
+
         @Override
         public Operation merge(Operation other) {
             if (other instanceof RemoveOperation) {
@@ -228,15 +800,20 @@ public class ListSyncer implements Runnable {
         }
 
         @Override
-        public void performRemote() throws IOException {
-            remote.remove(item);
+        public CompletableFuture<Void> performRemote() {
+            return remote.remove(item);
         }
 
         @Override
-        void performLocal() throws IOException {
+        void performLocal() {
             local.remove(item);
         }
 
+        @Override
+        OperationJournal.Type getJournalType() {
+            return OperationJournal.Type.REMOVE;
+        }
+
         @Override
         public Operation merge(Operation other) {
             if (other instanceof RemoveOperation) {
@@ -261,15 +838,20 @@ public class ListSyncer implements Runnable {
         }
 
         @Override
-        public void performRemote() throws IOException {
-            remote.toggle(item);
+        public CompletableFuture<Void> performRemote() {
+            return remote.toggle(item);
         }
 
         @Override
-        void performLocal() throws IOException {
+        void performLocal() {
             local.replace(item, item.toggleChecked());
         }
 
+        @Override
+        OperationJournal.Type getJournalType() {
+            return OperationJournal.Type.TOGGLE;
+        }
+
         @Override
         public Operation merge(Operation other) {
             if (other instanceof RemoveOperation) {
@@ -298,11 +880,17 @@ public class ListSyncer implements Runnable {
         }
 
         @Override
-        void performRemote() {
+        CompletableFuture<Void> performRemote() {
+            return CompletableFuture.completedFuture(null);
         }
 
         @Override
-        void performLocal() throws IOException {
+        void performLocal() {
+        }
+
+        @Override
+        OperationJournal.Type getJournalType() {
+            return null;
         }
 
         @Override
@@ -310,37 +898,48 @@ public class ListSyncer implements Runnable {
             return other;
         }
 
-    }
+        @Override
+        boolean isNoop() {
+            return true;
+        }
 
-    private class OperationTask implements Runnable {
-        private final Operation finalNextOp;
+    }
 
-        public OperationTask(Operation finalNextOp) {
-            this.finalNextOp = finalNextOp;
+    /**
+     * Queues an operation that failed temporarily again, to be retried after a backoff that grows
+     * with every failure. Until then its change stays applied locally. An operation the server
+     * refused is dropped, and the next refresh fetches the content even if remote reports no
+     * change, so it reverts the change locally.
+     */
+    private void failed(Operation operation, Exception e) {
+        if (e instanceof IOException && !RemoteStatusException.isRetryable((IOException) e)) {
+            LOGGER.warn("{} was refused, dropping it", operation, e);
+            rejected.inc();
+            refreshNeeded.set(true);
+            notifyException(e);
+            return;
         }
-
-        @Override
-        public void run() {
-            try {
-                LOGGER.info("{} performing operation {}", Thread.currentThread().getName(), finalNextOp);
-                finalNextOp.performRemote();
-                LOGGER.info("{} operation done {}", Thread.currentThread().getName(), finalNextOp);
-            } catch (IOException e) {
-                notifyException(e);
-            }
+        long backoff = retryInitialBackoff << Math.min(operation.failures, 30);
+        if (backoff <= 0 || backoff > retryMaxBackoff) {
+            backoff = retryMaxBackoff;
+        }
+        operation.failures++;
+        operation.retryAt = System.nanoTime() + Math.max(1, backoff);
+        LOGGER.info("{} failed {} times, retrying in {} ms", operation, operation.failures,
+                TimeUnit.NANOSECONDS.toMillis(backoff));
+        requeue(operation);
+        retried.inc();
+        if (!(e instanceof CircuitBreaker.OpenException)) {
+            notifyException(e);
         }
     }
 
-    private class CompacterTask implements Runnable {
-        @Override
-        public void run() {
-            LOGGER.info("locking queue for reordering");
-            synchronized (operationQueue) {
-                List<Operation> copy = Lists.newArrayList(operationQueue);
-                operationQueue.clear();
-                operationQueue.addAll(compactOperations(copy));
-            }
-            LOGGER.info("unlocking queue after reordering");
+    private void requeue(Operation operation) {
+        synchronized (operationLog) {
+            int before = operationLog.size();
+            operationLog.requeue(operation);
+            queued.inc();
+            queueDepth.add(operationLog.size() - before);
         }
     }
 }
@@ -0,0 +1,284 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A copy of a list on local disk, so it can be shown before the first refresh from remote is done.
+ * <p>
+ * The replica is a binary snapshot plus logs of the changes applied since. Logs are numbered by
+ * generation; a snapshot of generation g contains everything logged in generations below g. To
+ * compact, {@link #rotate()} starts a new log generation, and {@link #writeSnapshot} then writes
+ * the list as it was at rotation and deletes the logs it covers. A crash at any point leaves
+ * either the old snapshot and all logs, or the new snapshot and the logs after it.
+ */
+public class LocalReplica implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalReplica.class);
+
+    static final String SNAPSHOT_FILE = "replica.snapshot";
+    private static final Pattern LOG_FILE = Pattern.compile("replica-(\\d+)\\.log");
+    private static final int MAGIC = 0x4f4c5231; // OLR1
+    private static final int MIN_COMPACTION_RECORDS = 64;
+    /** change logs are rebuilt from remote if lost, so they are not forced on every change */
+    private static final long LOG_SYNC_INTERVAL = 5000;
+
+    private final File directory;
+    private long generation;
+    private OperationJournal log;
+    private int logRecords;
+    private boolean closed;
+
+    private LocalReplica(File directory) {
+        this.directory = directory;
+    }
+
+    public static LocalReplica open(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create replica directory " + directory);
+        }
+        return new LocalReplica(directory);
+    }
+
+    /**
+     * Reads the snapshot and applies all logs after it. Must be called once before recording
+     * changes.
+     */
+    public synchronized List<CheckItem> load() throws IOException {
+        long start = System.nanoTime();
+        HashIndexedList<CheckItem> items = new HashIndexedList<>();
+        long snapshotGeneration = readSnapshot(items);
+        TreeMap<Long, File> logs = logFiles();
+        generation = snapshotGeneration;
+        for (Map.Entry<Long, File> entry : logs.entrySet()) {
+            if (entry.getKey() < snapshotGeneration) {
+                delete(entry.getValue());
+                continue;
+            }
+            OperationJournal changes = OperationJournal.open(directory, entry.getValue().getName(), LOG_SYNC_INTERVAL);
+            for (OperationJournal.Entry change : changes.replay()) {
+                apply(items, change);
+                logRecords++;
+            }
+            if (entry.getKey().equals(logs.lastKey())) {
+                generation = entry.getKey();
+                log = changes;
+            } else {
+                changes.close();
+            }
+        }
+        if (log == null) {
+            log = OperationJournal.open(directory, logName(generation), LOG_SYNC_INTERVAL);
+            log.replay();
+        }
+        LOGGER.info("loaded {} items from replica in {}µs", items.size(), (System.nanoTime() - start) / 1000);
+        return new ArrayList<>(items);
+    }
+
+    private static void apply(List<CheckItem> items, OperationJournal.Entry change) {
+        switch (change.getType()) {
+            case ADD:
+                items.add(change.getItem());
+                break;
+            case REMOVE:
+                items.remove(change.getItem());
+                break;
+            default:
+                throw new IllegalStateException("unexpected replica change " + change);
+        }
+    }
+
+    public synchronized void added(CheckItem item) throws IOException {
+        log.append(OperationJournal.Type.ADD, item);
+        logRecords++;
+    }
+
+    public synchronized void removed(CheckItem item) throws IOException {
+        log.append(OperationJournal.Type.REMOVE, item);
+        logRecords++;
+    }
+
+    /**
+     * @return whether replaying the logs would take noticeably longer than reading a snapshot of
+     * a list with the given size
+     */
+    public synchronized boolean needsCompaction(int listSize) {
+        return logRecords > Math.max(MIN_COMPACTION_RECORDS, listSize);
+    }
+
+    /**
+     * Starts a new log generation. The caller must make sure no change is recorded between
+     * reading the list it is going to snapshot and this call.
+     *
+     * @return the generation to pass to {@link #writeSnapshot}
+     */
+    public synchronized long rotate() throws IOException {
+        if (closed) {
+            throw new IOException("replica in " + directory + " is closed");
+        }
+        log.close();
+        generation++;
+        log = OperationJournal.open(directory, logName(generation), LOG_SYNC_INTERVAL);
+        log.replay();
+        logRecords = 0;
+        return generation;
+    }
+
+    /**
+     * Writes the snapshot for a generation returned by {@link #rotate()} and deletes the logs it
+     * makes obsolete. Does not block recording changes, so it can run in the background.
+     */
+    public void writeSnapshot(long snapshotGeneration, List<CheckItem> items) throws IOException {
+        File tmp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmp);
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut), new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(items.size());
+            for (CheckItem item : items) {
+                byte[] text = item.getText().getBytes(Charsets.UTF_8);
+                out.writeBoolean(item.isChecked());
+                out.writeInt(text.length);
+                out.write(text);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        synchronized (this) {
+            if (!tmp.renameTo(new File(directory, SNAPSHOT_FILE))) {
+                throw new IOException("could not replace replica snapshot in " + directory);
+            }
+            for (Map.Entry<Long, File> entry : logFiles().headMap(snapshotGeneration).entrySet()) {
+                delete(entry.getValue());
+            }
+        }
+        LOGGER.info("wrote replica snapshot of {} items, generation {}", items.size(), snapshotGeneration);
+    }
+
+    /**
+     * @return the generation of the snapshot, or 0 if there is no valid one
+     */
+    private long readSnapshot(List<CheckItem> items) throws IOException {
+        File file = new File(directory, SNAPSHOT_FILE);
+        CheckedInputStream checked;
+        try {
+            checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+        } catch (FileNotFoundException e) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) {
+                LOGGER.warn("{} is not a replica snapshot, ignoring it", file);
+                return 0;
+            }
+            long snapshotGeneration = in.readLong();
+            // the checksum is only known at the end, so sizes from a torn or corrupt file must
+            // not be trusted before that
+            long length = file.length();
+            int count = in.readInt();
+            if (count < 0 || count > length) {
+                LOGGER.warn("{} claims {} items, ignoring it", file, count);
+                return 0;
+            }
+            List<CheckItem> read = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                boolean isChecked = in.readBoolean();
+                int textLength = in.readInt();
+                if (textLength < 0 || textLength > length) {
+                    LOGGER.warn("{} claims an item of {} bytes, ignoring it", file, textLength);
+                    return 0;
+                }
+                byte[] text = new byte[textLength];
+                in.readFully(text);
+                read.add(new CheckItem(new String(text, Charsets.UTF_8), isChecked));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                LOGGER.warn("checksum mismatch in {}, ignoring it", file);
+                return 0;
+            }
+            items.addAll(read);
+            return snapshotGeneration;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("could not read replica snapshot " + file + ", ignoring it", e);
+            return 0;
+        }
+    }
+
+    private TreeMap<Long, File> logFiles() {
+        TreeMap<Long, File> result = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            Matcher matcher = LOG_FILE.matcher(file.getName());
+            if (matcher.matches()) {
+                result.put(Long.parseLong(matcher.group(1)), file);
+            }
+        }
+        return result;
+    }
+
+    private static String logName(long generation) {
+        return "replica-" + generation + ".log";
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            LOGGER.warn("could not delete {}", file);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (log != null) {
+            log.close();
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a WebDAV multistatus body and hands each response to a consumer as soon as its closing
+ * tag is read, so the document is never held in memory. Only the properties the sync needs are
+ * kept, and only those reported with status 200.
+ */
+class MultiStatusParser {
+
+    private static final String DAV_NAMESPACE = "DAV:";
+    private static final String CALENDARSERVER_NAMESPACE = "http://calendarserver.org/ns/";
+
+    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+
+    static {
+        FACTORY.setNamespaceAware(true);
+        try {
+            FACTORY.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            FACTORY.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        } catch (ParserConfigurationException | SAXException e) {
+            // not supported by this parser, which then does not resolve them either
+        }
+    }
+
+    private MultiStatusParser() {
+    }
+
+    static class Response {
+        private String href;
+        private String lastModified;
+        private String etag;
+        private String ctag;
+        private boolean collection;
+
+        String getHref() {
+            return href;
+        }
+
+        /**
+         * @return the getlastmodified property as sent, or null
+         */
+        String getLastModified() {
+            return lastModified;
+        }
+
+        boolean isCollection() {
+            return collection || href.endsWith("/");
+        }
+
+        /**
+         * @return the ctag if the server supports it, the etag otherwise, or null if there is
+         * neither.
+         */
+        String getChangeTag() {
+            return ctag != null ? ctag : etag;
+        }
+    }
+
+    static void parse(InputStream body, Consumer<Response> consumer) throws IOException {
+        try {
+            SAXParser parser;
+            synchronized (FACTORY) {
+                parser = FACTORY.newSAXParser();
+            }
+            parser.parse(new InputSource(body), new Handler(consumer));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("could not parse multistatus", e);
+        }
+    }
+
+    private static class Handler extends DefaultHandler {
+        private final Consumer<Response> consumer;
+        private final StringBuilder text = new StringBuilder();
+
+        private Response response;
+        private boolean inPropstat;
+        private String propstatStatus;
+        private String lastModified;
+        private String etag;
+        private String ctag;
+        private boolean collection;
+
+        Handler(Consumer<Response> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            text.setLength(0);
+            if (!DAV_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "response":
+                    response = new Response();
+                    break;
+                case "propstat":
+                    inPropstat = true;
+                    propstatStatus = null;
+                    lastModified = null;
+                    etag = null;
+                    ctag = null;
+                    collection = false;
+                    break;
+                case "collection":
+                    collection = inPropstat;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (response == null) {
+                return;
+            }
+            if (CALENDARSERVER_NAMESPACE.equals(uri) && "getctag".equals(localName)) {
+                ctag = value();
+                return;
+            }
+            if (!DAV_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "href":
+                    if (!inPropstat) {
+                        response.href = value();
+                    }
+                    break;
+                case "getlastmodified":
+                    lastModified = value();
+                    break;
+                case "getetag":
+                    etag = value();
+                    break;
+                case "status":
+                    if (inPropstat) {
+                        propstatStatus = value();
+                    }
+                    break;
+                case "propstat":
+                    inPropstat = false;
+                    if (propstatStatus != null && propstatStatus.contains(" 200")) {
+                        response.lastModified = lastModified;
+                        response.etag = etag;
+                        response.ctag = ctag;
+                        response.collection = collection;
+                    }
+                    break;
+                case "response":
+                    if (response.href != null) {
+                        consumer.consume(response);
+                    }
+                    response = null;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String value() {
+            String value = text.toString().trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of operations that have not been performed remotely yet, so they survive the
+ * process being killed.
+ * <p>
+ * Every record is written to the file right away, so it survives the process dying. It is only
+ * forced to the device at most once per sync interval, so a burst of edits costs one fsync. Once
+ * operations are acknowledged remotely the journal is rewritten with only the still pending ones.
+ * Its size, and with it the time to replay it, is therefore bounded by the number of pending
+ * operations, not by the size of the list.
+ * <p>
+ * Record layout: {@code int length, byte type, byte checked, utf-8 text, int crc32}. A record
+ * with a bad checksum or cut off by a crash ends the replay, and the file is truncated to the
+ * last complete record.
+ */
+public class OperationJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OperationJournal.class);
+
+    public static final String FILE_NAME = "operations.journal";
+    public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+    private static final int MAGIC = 0x4f4c4a31; // OLJ1
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    public enum Type {
+        ADD, REMOVE, TOGGLE
+    }
+
+    public static class Entry {
+        private final Type type;
+        private final CheckItem item;
+
+        public Entry(Type type, CheckItem item) {
+            this.type = type;
+            this.item = item;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public CheckItem getItem() {
+            return item;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + item;
+        }
+    }
+
+    private final File file;
+    private final long syncInterval;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private boolean dirty;
+    private long lastSync;
+
+    private OperationJournal(File file, long syncInterval) throws IOException {
+        this.file = file;
+        this.syncInterval = syncInterval;
+        openChannel();
+    }
+
+    public static OperationJournal open(File directory) throws IOException {
+        return open(directory, DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * @param syncInterval the minimum time in milliseconds between two forces of the file by
+     *                     {@link #append}; 0 forces after every record
+     */
+    public static OperationJournal open(File directory, long syncInterval) throws IOException {
+        return open(directory, FILE_NAME, syncInterval);
+    }
+
+    static OperationJournal open(File directory, String fileName, long syncInterval) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create journal directory " + directory);
+        }
+        return new OperationJournal(new File(directory, fileName), syncInterval);
+    }
+
+    private void openChannel() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            writeFully(header(), 0);
+            channel.force(false);
+        }
+        channel.position(channel.size());
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).flip();
+        return header;
+    }
+
+    /**
+     * Reads all complete records. Must be called before the first {@link #append}.
+     */
+    public synchronized List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer magic = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(magic, 0);
+        if (magic.getInt(0) != MAGIC) {
+            LOGGER.warn("{} is not a journal, starting a new one", file);
+            rewrite(entries);
+            return entries;
+        }
+        long position = HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length < 2 || length > MAX_RECORD_SIZE || position + 4 + length + 4 > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length + 4);
+            readFully(record, position + 4);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != record.getInt(length)) {
+                break;
+            }
+            Type type = Type.values()[record.get(0)];
+            boolean checked = record.get(1) != 0;
+            String text = new String(record.array(), 2, length - 2, Charsets.UTF_8);
+            entries.add(new Entry(type, new CheckItem(text, checked)));
+            position += 4 + length + 4;
+        }
+        if (position != size) {
+            LOGGER.warn("truncating incomplete journal record at {} in {}", position, file);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        channel.position(position);
+        LOGGER.info("replayed {} journal entries from {}", entries.size(), file);
+        return entries;
+    }
+
+    public synchronized void append(Type type, CheckItem item) throws IOException {
+        writeFully(channel, encode(type, item));
+        dirty = true;
+        long now = System.currentTimeMillis();
+        if (now - lastSync >= syncInterval) {
+            force(now);
+        }
+    }
+
+    /**
+     * Forces records that were appended but not synced yet to the device.
+     */
+    public synchronized void sync() throws IOException {
+        if (dirty) {
+            force(System.currentTimeMillis());
+        }
+    }
+
+    private void force(long now) throws IOException {
+        channel.force(false);
+        dirty = false;
+        lastSync = now;
+    }
+
+    /**
+     * Atomically replaces the content of the journal with the given entries.
+     */
+    public synchronized void rewrite(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            channel.truncate(HEADER_SIZE);
+            channel.position(HEADER_SIZE);
+            force(System.currentTimeMillis());
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile tmpFile = new RandomAccessFile(tmp, "rw")) {
+            FileChannel tmpChannel = tmpFile.getChannel();
+            tmpChannel.truncate(0);
+            writeFully(tmpChannel, header());
+            for (Entry entry : entries) {
+                writeFully(tmpChannel, encode(entry.getType(), entry.getItem()));
+            }
+            tmpChannel.force(false);
+        }
+        raf.close();
+        if (!tmp.renameTo(file)) {
+            openChannel();
+            throw new IOException("could not replace " + file);
+        }
+        openChannel();
+        dirty = false;
+    }
+
+    private static ByteBuffer encode(Type type, CheckItem item) {
+        byte[] text = item.getText().getBytes(Charsets.UTF_8);
+        int length = 2 + text.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length + 4);
+        buffer.putInt(length);
+        buffer.put((byte) type.ordinal());
+        buffer.put((byte) (item.isChecked() ? 1 : 0));
+        buffer.put(text);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, length);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of " + file);
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        raf.close();
+    }
+
+}
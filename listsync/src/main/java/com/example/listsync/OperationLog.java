@@ -0,0 +1,109 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pending operations keyed by item text. A new operation is merged into the pending one for the
+ * same item right away, so there is never more than one pending operation per item and draining
+ * returns operations that are already compacted.
+ */
+class OperationLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OperationLog.class);
+
+    private final Map<String, ListSyncer.Operation> pending = new LinkedHashMap<>();
+
+    synchronized void add(ListSyncer.Operation operation) {
+        String key = operation.item.getText();
+        ListSyncer.Operation current = pending.get(key);
+        if (current == null) {
+            pending.put(key, operation);
+            return;
+        }
+        ListSyncer.Operation merged = current.merge(operation);
+        if (merged.isNoop()) {
+            LOGGER.info("{} and {} cancel each other out", current, operation);
+            pending.remove(key);
+        } else {
+            LOGGER.info("{} and {} have been merged to {}", current, operation, merged);
+            merged.inheritRetry(current);
+            pending.put(key, merged);
+        }
+    }
+
+    /**
+     * Puts back an operation that failed remotely. It happened before anything queued for the same
+     * item in the meantime, so it is merged in front of that.
+     */
+    synchronized void requeue(ListSyncer.Operation failed) {
+        String key = failed.item.getText();
+        ListSyncer.Operation current = pending.get(key);
+        if (current == null) {
+            pending.put(key, failed);
+            return;
+        }
+        ListSyncer.Operation merged = failed.merge(current);
+        if (merged.isNoop()) {
+            LOGGER.info("failed {} and {} cancel each other out", failed, current);
+            pending.remove(key);
+        } else {
+            merged.inheritRetry(failed);
+            pending.put(key, merged);
+        }
+    }
+
+    /**
+     * Removes and returns the pending operations that are not waiting for a retry at the given
+     * {@link System#nanoTime()}, in the order their items were first queued.
+     */
+    synchronized List<ListSyncer.Operation> drainReady(long now) {
+        List<ListSyncer.Operation> result = new ArrayList<>();
+        Iterator<ListSyncer.Operation> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            ListSyncer.Operation operation = iterator.next();
+            if (operation.isReady(now)) {
+                result.add(operation);
+                iterator.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the pending operations; the log is not changed
+     */
+    synchronized List<ListSyncer.Operation> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+}
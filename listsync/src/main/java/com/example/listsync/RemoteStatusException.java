@@ -0,0 +1,68 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import java.io.IOException;
+
+/**
+ * A request the server answered with an error status. Whether it is worth repeating depends on
+ * the status: server errors, timeouts and throttling are temporary, other client errors are not.
+ */
+public class RemoteStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public RemoteStatusException(String message, int status) {
+        super(message + " failed with status " + status);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isRetryable() {
+        return status >= 500 || status == 408 || status == 429;
+    }
+
+    /**
+     * @return whether the request that failed with the exception may succeed if repeated. Only
+     * error statuses that are not temporary are final; any other IOException is a network problem
+     * like a timeout or a refused connection.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof RemoteStatusException) {
+            return ((RemoteStatusException) e).isRetryable();
+        }
+        return true;
+    }
+
+    /**
+     * @throws RemoteStatusException unless the status is 2xx
+     */
+    static void check(String request, int status) throws RemoteStatusException {
+        if (status < 200 || status >= 300) {
+            throw new RemoteStatusException(request, status);
+        }
+    }
+
+}
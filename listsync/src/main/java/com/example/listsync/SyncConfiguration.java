@@ -0,0 +1,256 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.example.listsync.metrics.MetricsRegistry;
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SyncConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncConfiguration.class);
+    private static final AtomicBoolean WARNED_ABOUT_VIRTUAL_THREADS = new AtomicBoolean();
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_MAX_CONCURRENT_REFRESHES = 2;
+    public static final long DEFAULT_COLD_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_RETRY_INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_RETRY_MAX_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private final ExecutorService operationExecutor;
+    private final File journalDirectory;
+    private final File replicaDirectory;
+    private final int maxConcurrentRefreshes;
+    private final long coldRefreshInterval;
+    private final MetricsRegistry metrics;
+    private final long retryInitialBackoff;
+    private final long retryMaxBackoff;
+    private final boolean virtualThreads;
+
+    protected SyncConfiguration(SyncConfigurationBuilder builder) {
+        this.operationExecutor = builder.operationExecutor;
+        this.journalDirectory = builder.journalDirectory;
+        this.replicaDirectory = builder.replicaDirectory;
+        this.maxConcurrentRefreshes = builder.maxConcurrentRefreshes;
+        this.coldRefreshInterval = builder.coldRefreshInterval;
+        this.metrics = builder.metrics;
+        this.retryInitialBackoff = builder.retryInitialBackoff;
+        this.retryMaxBackoff = builder.retryMaxBackoff;
+        this.virtualThreads = builder.virtualThreads;
+        if (virtualThreads && !VirtualThreads.isAvailable() && WARNED_ABOUT_VIRTUAL_THREADS.compareAndSet(false, true)) {
+            LOGGER.warn("virtual threads need Java 21 or later, using platform threads instead");
+        }
+    }
+
+    /**
+     * Executor the calls to a blocking {@link ListRepository} are performed on. Operations on
+     * different items run concurrently, so its size bounds the number of requests a syncer has in
+     * flight. An {@link AsyncListRepository} brings its own bound. Unless one is configured, this
+     * is a pool shared by all syncers, or with {@link #usesVirtualThreads()} an executor that starts
+     * a virtual thread per operation.
+     */
+    public ExecutorService getOperationExecutor() {
+        if (operationExecutor == null) {
+            if (usesVirtualThreads()) {
+                return SyncExecutors.sharedVirtualThreadExecutor();
+            }
+            return SyncExecutors.sharedOperationExecutor();
+        }
+        return operationExecutor;
+    }
+
+    /**
+     * Executor the polls of an {@link UpdatingListSyncer} run on once they are due, or null if they
+     * run on the shared poll scheduler itself, which bounds how many lists are synced at a time.
+     */
+    ExecutorService getPollExecutor() {
+        if (usesVirtualThreads()) {
+            return SyncExecutors.sharedVirtualThreadExecutor();
+        }
+        return null;
+    }
+
+    /**
+     * @return whether virtual threads were asked for and the runtime supports them, which needs
+     * Java 21 or later. On older runtimes, including Android, the platform thread pools are used.
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads && VirtualThreads.isAvailable();
+    }
+
+    /**
+     * Directory of the {@link OperationJournal} pending operations are recorded in, or null if they
+     * are only kept in memory.
+     */
+    public File getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Directory of the {@link LocalReplica} the list content is kept in between runs, or null if
+     * the list starts out empty until the first refresh.
+     */
+    public File getReplicaDirectory() {
+        return replicaDirectory;
+    }
+
+    /**
+     * The number of lists a {@link SyncManager} refreshes at the same time.
+     */
+    public int getMaxConcurrentRefreshes() {
+        return maxConcurrentRefreshes;
+    }
+
+    /**
+     * The minimum time in milliseconds between two refreshes of a list a {@link SyncManager} does
+     * not consider hot. Changes to such lists are picked up at the next scan after that.
+     */
+    public long getColdRefreshInterval() {
+        return coldRefreshInterval;
+    }
+
+    /**
+     * Registry syncs record their metrics in.
+     */
+    public MetricsRegistry getMetrics() {
+        if (metrics == null) {
+            return MetricsRegistry.getDefault();
+        }
+        return metrics;
+    }
+
+    /**
+     * The time in milliseconds an operation waits before it is performed again after its first
+     * failure. It doubles with every further failure, up to {@link #getRetryMaxBackoff()}.
+     */
+    public long getRetryInitialBackoff() {
+        return retryInitialBackoff;
+    }
+
+    /** in milliseconds */
+    public long getRetryMaxBackoff() {
+        return retryMaxBackoff;
+    }
+
+    /**
+     * @return this configuration with the journal and replica in a subdirectory for the given
+     * list, so several lists can be synced with the same configuration
+     */
+    SyncConfiguration forList(String listName) {
+        String directoryName;
+        try {
+            directoryName = URLEncoder.encode(listName, Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder()
+                .operationExecutor(operationExecutor)
+                .journalDirectory(journalDirectory == null ? null : new File(journalDirectory, directoryName))
+                .replicaDirectory(replicaDirectory == null ? null : new File(replicaDirectory, directoryName))
+                .maxConcurrentRefreshes(maxConcurrentRefreshes)
+                .coldRefreshInterval(coldRefreshInterval, TimeUnit.MILLISECONDS)
+                .metrics(metrics)
+                .retryBackoff(retryInitialBackoff, retryMaxBackoff, TimeUnit.MILLISECONDS)
+                .virtualThreads(virtualThreads)
+                .build();
+    }
+
+    public static SyncConfiguration defaults() {
+        return builder().build();
+    }
+
+    public static SyncConfigurationBuilder builder() {
+        return new SyncConfigurationBuilder();
+    }
+
+    public static class SyncConfigurationBuilder {
+        private ExecutorService operationExecutor;
+        private File journalDirectory;
+        private File replicaDirectory;
+        private int maxConcurrentRefreshes = DEFAULT_MAX_CONCURRENT_REFRESHES;
+        private long coldRefreshInterval = DEFAULT_COLD_REFRESH_INTERVAL;
+        private MetricsRegistry metrics;
+        private long retryInitialBackoff = DEFAULT_RETRY_INITIAL_BACKOFF;
+        private long retryMaxBackoff = DEFAULT_RETRY_MAX_BACKOFF;
+        private boolean virtualThreads;
+
+        private SyncConfigurationBuilder() {
+        }
+
+        public SyncConfigurationBuilder operationExecutor(ExecutorService operationExecutor) {
+            this.operationExecutor = operationExecutor;
+            return this;
+        }
+
+        public SyncConfigurationBuilder journalDirectory(File journalDirectory) {
+            this.journalDirectory = journalDirectory;
+            return this;
+        }
+
+        public SyncConfigurationBuilder replicaDirectory(File replicaDirectory) {
+            this.replicaDirectory = replicaDirectory;
+            return this;
+        }
+
+        public SyncConfigurationBuilder maxConcurrentRefreshes(int maxConcurrentRefreshes) {
+            this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+            return this;
+        }
+
+        public SyncConfigurationBuilder coldRefreshInterval(long time, TimeUnit unit) {
+            this.coldRefreshInterval = unit.toMillis(time);
+            return this;
+        }
+
+        public SyncConfigurationBuilder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public SyncConfigurationBuilder retryBackoff(long initial, long max, TimeUnit unit) {
+            this.retryInitialBackoff = unit.toMillis(initial);
+            this.retryMaxBackoff = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Runs operations and polls on virtual threads where the runtime supports them.
+         *
+         * @see SyncConfiguration#usesVirtualThreads()
+         */
+        public SyncConfigurationBuilder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public SyncConfiguration build() {
+            return new SyncConfiguration(this);
+        }
+    }
+
+}
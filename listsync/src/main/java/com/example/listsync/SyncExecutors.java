@@ -0,0 +1,98 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Thread pools shared by all syncers that do not bring their own.
+ */
+final class SyncExecutors {
+
+    private static ExecutorService operationExecutor;
+    private static ExecutorService virtualThreadExecutor;
+    private static ScheduledThreadPoolExecutor pollScheduler;
+    private static int pollSchedulerUsers;
+
+    private SyncExecutors() {
+    }
+
+    /**
+     * Bounded pool the remote operations of all {@link ListSyncer}s run on. Its threads are daemons,
+     * so it never needs to be shut down.
+     */
+    static synchronized ExecutorService sharedOperationExecutor() {
+        if (operationExecutor == null) {
+            operationExecutor = Executors.newFixedThreadPool(SyncConfiguration.DEFAULT_PARALLELISM,
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("listsync-op-%d")
+                            .setDaemon(true)
+                            .build());
+        }
+        return operationExecutor;
+    }
+
+    /**
+     * Executor that runs every task on a new virtual thread, shared by all syncers configured to
+     * use virtual threads. Before Java 21 it falls back to cached platform threads.
+     *
+     * @see VirtualThreads#isAvailable()
+     */
+    static synchronized ExecutorService sharedVirtualThreadExecutor() {
+        if (virtualThreadExecutor == null) {
+            virtualThreadExecutor = VirtualThreads.newExecutor("listsync-vt-");
+        }
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * Scheduler the polls of all {@link UpdatingListSyncer}s run on. Every caller must call
+     * {@link #releasePollScheduler()} once it stops polling; the pool is shut down when the last
+     * one does.
+     */
+    static synchronized ScheduledExecutorService acquirePollScheduler() {
+        if (pollScheduler == null) {
+            pollScheduler = new ScheduledThreadPoolExecutor(SyncConfiguration.DEFAULT_PARALLELISM,
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("listsync-poll-%d")
+                            .setDaemon(true)
+                            .build());
+            pollScheduler.setRemoveOnCancelPolicy(true);
+        }
+        pollSchedulerUsers++;
+        return pollScheduler;
+    }
+
+    static synchronized void releasePollScheduler() {
+        if (pollSchedulerUsers == 0) {
+            throw new IllegalStateException("poll scheduler released more often than acquired");
+        }
+        if (--pollSchedulerUsers == 0) {
+            pollScheduler.shutdown();
+            pollScheduler = null;
+        }
+    }
+
+}
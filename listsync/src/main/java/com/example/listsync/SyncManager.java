@@ -0,0 +1,276 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs all lists of a repository.
+ * <p>
+ * Instead of every list polling on its own, each scan asks the repository for the change tags of
+ * all lists at once (a single Depth-1 PROPFIND for WebDAV) and refreshes only the lists whose tag
+ * changed or that have operations pending. Hot lists, like the one on screen, are refreshed at
+ * every scan; cold lists at most once per {@link SyncConfiguration#getColdRefreshInterval()}.
+ * At most {@link SyncConfiguration#getMaxConcurrentRefreshes()} lists are refreshed at a time.
+ */
+public class SyncManager implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncManager.class);
+
+    public enum Priority {
+        HOT, COLD
+    }
+
+    private final Repository<?> repository;
+    private final SyncConfiguration config;
+    private final ExecutorService refreshExecutor;
+
+    private final Map<String, ListSyncer> syncers = new LinkedHashMap<>();
+    private final Map<String, Priority> priorities = new HashMap<>();
+    private final Map<String, String> seenTags = new HashMap<>();
+    private final Map<String, Long> lastRefresh = new HashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFuture;
+
+    public SyncManager(Repository<?> repository) {
+        this(repository, SyncConfiguration.defaults());
+    }
+
+    public SyncManager(Repository<?> repository, SyncConfiguration config) {
+        this.repository = repository;
+        this.config = config;
+        this.refreshExecutor = Executors.newFixedThreadPool(config.getMaxConcurrentRefreshes(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("listsync-refresh-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    /**
+     * @return the syncer of the given list, created on first use
+     */
+    public synchronized ListSyncer getSyncer(String listName) {
+        ListSyncer syncer = syncers.get(listName);
+        if (syncer == null) {
+            syncer = new ListSyncer(repository.getList(listName), config.forList(listName));
+            syncers.put(listName, syncer);
+        }
+        return syncer;
+    }
+
+    /**
+     * @return the syncer of the given list, or null if it was not used or scanned yet. Unlike
+     * {@link #getSyncer(String)} this does not create the list.
+     */
+    public synchronized ListSyncer findSyncer(String listName) {
+        return syncers.get(listName);
+    }
+
+    public synchronized List<String> getListNames() {
+        return new ArrayList<>(syncers.keySet());
+    }
+
+    public synchronized void setPriority(String listName, Priority priority) {
+        priorities.put(listName, priority);
+    }
+
+    /**
+     * Makes the given list the only hot one.
+     */
+    public synchronized void setForeground(String listName) {
+        priorities.clear();
+        priorities.put(listName, Priority.HOT);
+    }
+
+    private Priority getPriority(String listName) {
+        Priority priority = priorities.get(listName);
+        return priority == null ? Priority.COLD : priority;
+    }
+
+    /**
+     * Scans at a fixed delay on the shared poll scheduler until {@link #stop()} or {@link #close()}.
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        stop();
+        if (scheduler == null) {
+            scheduler = SyncExecutors.acquirePollScheduler();
+        }
+        scheduledFuture = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // an exception would cancel the periodic scan for good
+                try {
+                    scan();
+                } catch (RuntimeException e) {
+                    LOGGER.error("scan failed", e);
+                }
+            }
+        }, 0, interval, unit);
+    }
+
+    public synchronized void stop() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+            scheduledFuture = null;
+        }
+    }
+
+    /**
+     * Finds the lists that changed and refreshes them. Returns once all refreshes are done.
+     *
+     * @return the names of the lists that were refreshed
+     */
+    public List<String> scan() {
+        Map<String, String> tags;
+        try {
+            tags = listTags();
+        } catch (IOException e) {
+            LOGGER.error("could not scan for changed lists", e);
+            return Collections.emptyList();
+        }
+        List<String> refreshed = new ArrayList<>();
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        synchronized (this) {
+            dropDeletedLists(tags.keySet());
+            for (String listName : tags.keySet()) {
+                getSyncer(listName);
+            }
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, ListSyncer> entry : syncers.entrySet()) {
+                String listName = entry.getKey();
+                ListSyncer syncer = entry.getValue();
+                String tag = tags.get(listName);
+                boolean changed = tag == null || !tag.equals(seenTags.get(listName));
+                if (!changed && syncer.getPendingOperations() == 0) {
+                    continue;
+                }
+                if (getPriority(listName) == Priority.COLD) {
+                    Long last = lastRefresh.get(listName);
+                    if (last != null && now - last < config.getColdRefreshInterval()) {
+                        LOGGER.info("deferring refresh of cold list {}", listName);
+                        continue;
+                    }
+                }
+                refreshed.add(listName);
+                futures.put(listName, refreshExecutor.submit(refreshTask(syncer, changed)));
+            }
+        }
+        LOGGER.info("refreshing {} of {} lists", refreshed.size(), tags.size());
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            String listName = entry.getKey();
+            try {
+                entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // not recorded as seen, so it is tried again at the next scan
+                LOGGER.error("refresh of list " + listName + " failed unexpectedly", e.getCause());
+                continue;
+            }
+            synchronized (this) {
+                ListSyncer syncer = syncers.get(listName);
+                // a failed refresh is tried again at the next scan, even if the tag stays the same
+                if (syncer != null && !syncer.lastSyncFailed()) {
+                    seenTags.put(listName, tags.get(listName));
+                    lastRefresh.put(listName, now);
+                }
+            }
+        }
+        return refreshed;
+    }
+
+    /**
+     * Closes the syncers of lists that were seen remotely before but are gone now, instead of
+     * refreshing them, which would create them again. Lists that were never seen remotely are
+     * kept, since they are created by their first operation.
+     */
+    private void dropDeletedLists(Set<String> listNames) {
+        Iterator<Map.Entry<String, ListSyncer>> iterator = syncers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ListSyncer> entry = iterator.next();
+            String listName = entry.getKey();
+            if (listNames.contains(listName) || !seenTags.containsKey(listName)) {
+                continue;
+            }
+            LOGGER.info("list {} was deleted remotely", listName);
+            entry.getValue().close();
+            iterator.remove();
+            seenTags.remove(listName);
+            lastRefresh.remove(listName);
+            priorities.remove(listName);
+        }
+    }
+
+    private Map<String, String> listTags() throws IOException {
+        if (repository instanceof ConditionalRepository) {
+            return ((ConditionalRepository<?>) repository).getListTags();
+        }
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (String listName : repository.getLists()) {
+            tags.put(listName, null);
+        }
+        return tags;
+    }
+
+    private static Runnable refreshTask(final ListSyncer syncer, final boolean changed) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                syncer.sync(!changed);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+        if (scheduler != null) {
+            SyncExecutors.releasePollScheduler();
+            scheduler = null;
+        }
+        refreshExecutor.shutdown();
+        for (ListSyncer syncer : syncers.values()) {
+            syncer.close();
+        }
+    }
+
+}
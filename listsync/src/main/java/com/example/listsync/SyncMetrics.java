@@ -0,0 +1,63 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+/**
+ * Names of the metrics listsync records in the {@link com.example.listsync.metrics.MetricsRegistry}
+ * of its configuration. Durations are histograms, everything else is a counter unless noted.
+ */
+final class SyncMetrics {
+
+    /** duration of performing an operation remotely, followed by the operation type, e.g. "add" */
+    static final String OPERATION = "sync.operation.";
+    /** duration of a whole sync cycle */
+    static final String CYCLE = "sync.cycle";
+    /** operations waiting to be performed remotely, summed over all syncers */
+    static final String QUEUE_DEPTH = "sync.queue.depth";
+    /** operations queued by local changes */
+    static final String QUEUED = "sync.operations.queued";
+    /** operations performed remotely after merging */
+    static final String DISPATCHED = "sync.operations.dispatched";
+    /**
+     * gauge: the share of queued operations that never had to be performed because they were
+     * merged with others
+     */
+    static final String COMPACTION_RATIO = "sync.operations.compaction-ratio";
+    /** operations that failed temporarily and were queued again */
+    static final String RETRIED = "sync.operations.retried";
+    /** operations the server refused, which were dropped */
+    static final String REJECTED = "sync.operations.rejected";
+    /** refreshes that found the remote list changed */
+    static final String REFRESH_CHANGED = "sync.refresh.changed";
+    /** refreshes that found the remote list unchanged */
+    static final String REFRESH_UNCHANGED = "sync.refresh.unchanged";
+    /** duration of an HTTP request until the response headers arrived, followed by the method */
+    static final String REQUEST = "webdav.request.";
+    /** request body bytes sent */
+    static final String BYTES_OUT = "webdav.bytes.out";
+    /** response body bytes received, before decompression */
+    static final String BYTES_IN = "webdav.bytes.in";
+    /** requests that were repeated, e.g. after a conflict */
+    static final String RETRIES = "webdav.retries";
+
+    private SyncMetrics() {
+    }
+
+}
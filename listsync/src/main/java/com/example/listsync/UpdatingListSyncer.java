@@ -19,74 +19,289 @@
 
 package com.example.listsync;
 
+import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.*;
 
+/**
+ * A {@link ListSyncer} that syncs periodically and right after local changes.
+ * <p>
+ * Polls run on a scheduler shared by all instances, or are handed from it to a virtual thread each
+ * if the configuration {@link SyncConfiguration#usesVirtualThreads() uses virtual threads}. With {@link #setAdaptiveUpdateTimeout} the
+ * delay between polls starts at the minimum and doubles (with some jitter, so syncers started
+ * together do not poll together) every time a poll finds nothing to do, up to the maximum. Local
+ * changes and remote changes reset it to the minimum.
+ * <p>
+ * Local changes are synced after a short coalescing window, so a burst of edits is sent in one
+ * cycle. A cycle that is already running is never interrupted; changes made while it runs are
+ * picked up by it or by the next one.
+ */
 public class UpdatingListSyncer extends ListSyncer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UpdatingListSyncer.class);
 
-    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    static final int BACKOFF_FACTOR = 2;
+    static final double JITTER = 0.2;
+    public static final long DEFAULT_COALESCING_WINDOW = 300;
+
+    private final Random random = new Random();
+    private final ExecutorService pollExecutor;
 
+    private ScheduledExecutorService scheduler;
+    private boolean sharedScheduler;
     private ScheduledFuture<?> scheduledFuture;
-    private long time;
+    private long generation;
+    private long minTime;
+    private long maxTime;
+    private long delay;
     private TimeUnit unit;
+    private long coalescingWindow = DEFAULT_COALESCING_WINDOW;
+    private boolean polling;
+    private boolean closed;
+    private boolean changedWhilePolling;
 
     public UpdatingListSyncer(ListRepository remote) {
-        super(remote);
+        this(remote, SyncConfiguration.defaults());
     }
 
     public UpdatingListSyncer(List<CheckItem> local, ListRepository remote) {
         super(local, remote);
+        this.pollExecutor = null;
+    }
+
+    public UpdatingListSyncer(ListRepository remote, SyncConfiguration config) {
+        super(remote, config);
+        this.pollExecutor = config.getPollExecutor();
+    }
+
+    public UpdatingListSyncer(AsyncListRepository remote, SyncConfiguration config) {
+        super(remote, config);
+        this.pollExecutor = config.getPollExecutor();
     }
 
     public synchronized void setUpdateTimeout(long time, TimeUnit unit) {
-        this.time = time;
+        setAdaptiveUpdateTimeout(time, time, unit);
+    }
+
+    /**
+     * Polls between every {@code minTime} while the list is in use and every {@code maxTime} while
+     * it is idle.
+     */
+    public synchronized void setAdaptiveUpdateTimeout(long minTime, long maxTime, TimeUnit unit) {
+        Preconditions.checkArgument(minTime > 0 && minTime <= maxTime, "invalid bounds %s..%s", minTime, maxTime);
+        this.minTime = minTime;
+        this.maxTime = maxTime;
         this.unit = unit;
         reschedule();
     }
 
+    /**
+     * Sets how long to wait after a local change for more changes before syncing them.
+     */
+    public synchronized void setCoalescingWindow(long time, TimeUnit unit) {
+        this.coalescingWindow = unit.toMillis(time);
+    }
+
     @Override
     public synchronized void add(CheckItem item) {
         super.add(item);
-        reschedule();
+        localChanged();
+    }
+
+    @Override
+    public synchronized void toggle(CheckItem item) {
+        super.toggle(item);
+        localChanged();
     }
 
     @Override
     public synchronized void remove(CheckItem item) {
         super.remove(item);
-        reschedule();
+        localChanged();
+    }
+
+    /**
+     * Schedules a cycle at the end of the coalescing window, unless one is due before that anyway
+     * or is running right now.
+     */
+    private void localChanged() {
+        if (unit == null || closed) {
+            return;
+        }
+        delay = minTime;
+        if (polling) {
+            changedWhilePolling = true;
+            return;
+        }
+        if (scheduledFuture != null && !scheduledFuture.isDone()) {
+            if (scheduledFuture.getDelay(TimeUnit.MILLISECONDS) <= coalescingWindow) {
+                return;
+            }
+            scheduledFuture.cancel(false);
+        }
+        ensureScheduler();
+        schedule(coalescingWindow, TimeUnit.MILLISECONDS);
     }
 
     private void reschedule() {
+        if (closed) {
+            LOGGER.info("closed, not scheduling");
+            return;
+        }
+        if (unit == null) {
+            LOGGER.info("no update timeout set, not scheduling");
+            return;
+        }
         LOGGER.info("rescheduling...");
+        delay = minTime;
+        if (polling) {
+            changedWhilePolling = true;
+            return;
+        }
         if (scheduledFuture != null) {
-            boolean cancelled = scheduledFuture.cancel(true);
-            if (cancelled) {
-                LOGGER.warn("canceled running!");
+            scheduledFuture.cancel(false);
+        }
+        ensureScheduler();
+        schedule(0, unit);
+    }
+
+    /**
+     * Polls on the given scheduler instead of the shared one, so tests can control time.
+     */
+    synchronized void setScheduler(ScheduledExecutorService scheduler) {
+        Preconditions.checkState(this.scheduler == null, "already polling on a scheduler");
+        this.scheduler = scheduler;
+    }
+
+    private void ensureScheduler() {
+        if (scheduler == null) {
+            scheduler = SyncExecutors.acquirePollScheduler();
+            sharedScheduler = true;
+        }
+    }
+
+    private void schedule(long time, TimeUnit unit) {
+        final long scheduledGeneration = ++generation;
+        final Runnable poll = new Runnable() {
+            @Override
+            public void run() {
+                poll(scheduledGeneration);
+            }
+        };
+        if (pollExecutor == null) {
+            scheduledFuture = scheduler.schedule(poll, time, unit);
+            return;
+        }
+        // the scheduler only keeps time, the poll itself must not hold one of its few threads
+        scheduledFuture = scheduler.schedule(new Callable<Future<?>>() {
+            @Override
+            public Future<?> call() {
+                return pollExecutor.submit(poll);
             }
+        }, time, unit);
+    }
+
+    private void poll(long scheduledGeneration) {
+        synchronized (this) {
+            if (scheduledGeneration != generation) {
+                return;
+            }
+            polling = true;
+            changedWhilePolling = false;
+        }
+        boolean active = false;
+        try {
+            active = sync();
+        } finally {
+            synchronized (this) {
+                polling = false;
+                if (scheduledGeneration == generation && scheduler != null) {
+                    scheduleNext(active);
+                }
+                // otherwise deactivated or closed while syncing
+            }
+        }
+    }
+
+    private void scheduleNext(boolean active) {
+        if (changedWhilePolling) {
+            LOGGER.info("changed while syncing, syncing again");
+            delay = minTime;
+            schedule(coalescingWindow, TimeUnit.MILLISECONDS);
+            return;
+        }
+        delay = nextDelay(delay, active, minTime, maxTime);
+        long jittered = withJitter(delay, minTime, maxTime, random);
+        LOGGER.info("next poll in {} {}", jittered, unit);
+        schedule(jittered, unit);
+    }
+
+    static long nextDelay(long delay, boolean active, long minTime, long maxTime) {
+        if (active) {
+            return minTime;
         }
-        scheduledFuture = executorService.scheduleWithFixedDelay(this, 0, this.time, this.unit);
+        return Math.min(maxTime, Math.max(minTime, delay * BACKOFF_FACTOR));
+    }
+
+    static long withJitter(long delay, long minTime, long maxTime, Random random) {
+        long jitter = (long) (delay * JITTER * (2 * random.nextDouble() - 1));
+        return Math.min(maxTime, Math.max(minTime, delay + jitter));
     }
 
     public void waitUntilDone() throws InterruptedException {
+        ScheduledFuture<?> future;
+        synchronized (this) {
+            future = scheduledFuture;
+        }
+        if (future == null) {
+            return;
+        }
         try {
-            scheduledFuture.get();
+            Object handedOff = future.get();
+            if (handedOff instanceof Future) {
+                ((Future<?>) handedOff).get();
+            }
         } catch (ExecutionException e) {
             LOGGER.error("error in schedule", e);
             // ignore
         }
     }
 
-    public void deactivate() {
+    /**
+     * Stops polling. A cycle that is running right now is finished, but no further one is
+     * scheduled.
+     */
+    public synchronized void deactivate() {
+        generation++;
         if (scheduledFuture == null) {
             return;
         }
-        scheduledFuture.cancel(true);
+        scheduledFuture.cancel(false);
         scheduledFuture = null;
     }
 
+    /**
+     * Stops polling and gives up this syncer's share of the scheduler. Changes made afterwards are
+     * ignored.
+     */
+    @Override
+    public void close() {
+        // not while holding this syncer's monitor, since closing waits for a running sync, whose
+        // listeners may change the list
+        synchronized (this) {
+            closed = true;
+            deactivate();
+            if (sharedScheduler) {
+                SyncExecutors.releasePollScheduler();
+                sharedScheduler = false;
+            }
+            scheduler = null;
+        }
+        super.close();
+    }
+
 }
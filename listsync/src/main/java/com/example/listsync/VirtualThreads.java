@@ -0,0 +1,50 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads, which need Java 21. This is the fallback for older runtimes; the
+ * multi-release jar replaces it with the version in src/main/java21 on Java 21 and later.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * @return an executor that runs every task on a cached daemon platform thread, as close to a
+     * thread per task as older runtimes get
+     */
+    static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(namePrefix + "%d")
+                .setDaemon(true)
+                .build());
+    }
+
+}
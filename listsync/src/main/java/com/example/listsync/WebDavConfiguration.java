@@ -19,22 +19,71 @@
 
 package com.example.listsync;
 
+import com.example.listsync.metrics.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+
 public class WebDavConfiguration {
 
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+    public static final int DEFAULT_CONNECTION_TIMEOUT = 15000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 30000;
+    public static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_CIRCUIT_OPEN_DURATION = 30000;
+
+    /**
+     * How an item is toggled, given that the checked state is part of the item's file name.
+     */
+    public enum ToggleStrategy {
+        /**
+         * MOVE the file to its new name, then PUT it again so its lastmodified moves it to the
+         * end of its group. Two requests.
+         */
+        MOVE_AND_TOUCH,
+        /**
+         * Only MOVE the file. One request; servers keep lastmodified on MOVE, so a toggled item
+         * keeps the position it was added at within its group.
+         */
+        MOVE
+    }
+
     private final String adress;
     private final int port;
     private final String watchpath;
     private final String username;
     private final String password;
     private final String baseUrl;
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final int connectionTimeout;
+    private final int socketTimeout;
+    private final boolean gzip;
+    private final ToggleStrategy toggleStrategy;
+    private final MetricsRegistry metrics;
+    private final int circuitFailureThreshold;
+    private final long circuitOpenDuration;
 
     protected WebDavConfiguration(String adress, int port, String watchpath, String username, String password, boolean useSSL) {
-        this.adress = adress;
-        this.port = port;
-        this.watchpath = watchpath;
-        this.username = username;
-        this.password = password;
-        this.baseUrl = "http" + (useSSL ? "s" : "") + "://" + adress + ":" + port + "/";
+        this(builder(adress, watchpath).customPort(port).credentials(username, password).usingSSL(useSSL));
+    }
+
+    protected WebDavConfiguration(WebDavConfigurationBuilder builder) {
+        this.adress = builder.adress;
+        this.port = builder.port == null ? (builder.useSSL ? 443 : 80) : builder.port;
+        this.watchpath = builder.watchpath;
+        this.username = builder.username;
+        this.password = builder.password;
+        this.baseUrl = "http" + (builder.useSSL ? "s" : "") + "://" + adress + ":" + port + "/";
+        this.maxConnections = builder.maxConnections;
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.connectionTimeout = builder.connectionTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.gzip = builder.gzip;
+        this.toggleStrategy = builder.toggleStrategy;
+        this.metrics = builder.metrics;
+        this.circuitFailureThreshold = builder.circuitFailureThreshold;
+        this.circuitOpenDuration = builder.circuitOpenDuration;
     }
 
     public String getBaseUrl() {
@@ -61,6 +110,56 @@ public class WebDavConfiguration {
         return watchpath;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /** in milliseconds */
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /** in milliseconds */
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public ToggleStrategy getToggleStrategy() {
+        return toggleStrategy;
+    }
+
+    /**
+     * Registry request latencies and transferred bytes are recorded in.
+     */
+    public MetricsRegistry getMetrics() {
+        if (metrics == null) {
+            return MetricsRegistry.getDefault();
+        }
+        return metrics;
+    }
+
+    /**
+     * The number of failed requests in a row after which requests to the server are paused.
+     *
+     * @see CircuitBreaker
+     */
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    /** in milliseconds */
+    public long getCircuitOpenDuration() {
+        return circuitOpenDuration;
+    }
+
     public static WebDavConfigurationBuilder builder(String adress, String watchpath) {
         return new WebDavConfigurationBuilder(adress, watchpath);
     }
@@ -72,6 +171,15 @@ public class WebDavConfiguration {
         private String username;
         private String password;
         private final String watchpath;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+        private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+        private boolean gzip = true;
+        private ToggleStrategy toggleStrategy = ToggleStrategy.MOVE_AND_TOUCH;
+        private MetricsRegistry metrics;
+        private int circuitFailureThreshold = DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+        private long circuitOpenDuration = DEFAULT_CIRCUIT_OPEN_DURATION;
 
         private WebDavConfigurationBuilder(String adress, String watchpath) {
             this.adress = adress;
@@ -99,11 +207,41 @@ public class WebDavConfiguration {
             return this;
         }
 
+        public WebDavConfigurationBuilder connectionPool(int maxConnections, int maxConnectionsPerHost) {
+            this.maxConnections = maxConnections;
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public WebDavConfigurationBuilder timeouts(int connectionTimeout, int socketTimeout) {
+            this.connectionTimeout = connectionTimeout;
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        public WebDavConfigurationBuilder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        public WebDavConfigurationBuilder toggleStrategy(ToggleStrategy toggleStrategy) {
+            this.toggleStrategy = toggleStrategy;
+            return this;
+        }
+
+        public WebDavConfigurationBuilder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public WebDavConfigurationBuilder circuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+            this.circuitFailureThreshold = failureThreshold;
+            this.circuitOpenDuration = unit.toMillis(openDuration);
+            return this;
+        }
+
         public WebDavConfiguration build() {
-            if (port == null) {
-                port = useSSL ? 443 : 80;
-            }
-            return new WebDavConfiguration(adress, port, watchpath, username, password, useSSL);
+            return new WebDavConfiguration(this);
         }
     }
 
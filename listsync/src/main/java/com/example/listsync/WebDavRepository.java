@@ -20,60 +20,109 @@
 package com.example.listsync;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.util.DateParseException;
 import org.apache.commons.httpclient.util.DateUtil;
 import org.apache.jackrabbit.webdav.DavConstants;
-import org.apache.jackrabbit.webdav.DavException;
-import org.apache.jackrabbit.webdav.MultiStatus;
-import org.apache.jackrabbit.webdav.MultiStatusResponse;
 import org.apache.jackrabbit.webdav.client.methods.DavMethod;
 import org.apache.jackrabbit.webdav.client.methods.DeleteMethod;
 import org.apache.jackrabbit.webdav.client.methods.MkColMethod;
 import org.apache.jackrabbit.webdav.client.methods.MoveMethod;
 import org.apache.jackrabbit.webdav.client.methods.PropFindMethod;
 import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+import org.apache.jackrabbit.webdav.xml.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.MalformedURLException;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class WebDavRepository implements Repository {
+public class WebDavRepository implements ConditionalRepository<ListRepository>, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WebDavRepository.class);
 
+    /**
+     * The only properties the sync needs. Asking for these instead of allprop keeps dead properties
+     * (which some servers attach to every resource) out of each poll.
+     */
+    private static final DavPropertyNameSet SYNC_PROPERTIES = new DavPropertyNameSet();
+
+    private static final Namespace CALENDARSERVER_NAMESPACE = Namespace.getNamespace("cs", "http://calendarserver.org/ns/");
+    private static final DavPropertyName GETCTAG = DavPropertyName.create("getctag", CALENDARSERVER_NAMESPACE);
+
+    /** Properties that change whenever a member of a collection changes, most specific first. */
+    private static final DavPropertyNameSet CHANGE_TAG_PROPERTIES = new DavPropertyNameSet();
+
+    /** What {@link #getListTags()} needs to tell lists apart from other members of the watch path. */
+    private static final DavPropertyNameSet LIST_TAG_PROPERTIES = new DavPropertyNameSet();
+
+    static {
+        SYNC_PROPERTIES.add(DavPropertyName.GETLASTMODIFIED);
+        SYNC_PROPERTIES.add(DavPropertyName.GETETAG);
+        SYNC_PROPERTIES.add(DavPropertyName.RESOURCETYPE);
+        SYNC_PROPERTIES.add(GETCTAG);
+        CHANGE_TAG_PROPERTIES.add(GETCTAG);
+        CHANGE_TAG_PROPERTIES.add(DavPropertyName.GETETAG);
+        LIST_TAG_PROPERTIES.addAll(CHANGE_TAG_PROPERTIES);
+        LIST_TAG_PROPERTIES.add(DavPropertyName.RESOURCETYPE);
+    }
+
     private final WebDavConfiguration config;
-    private HttpClient client;
+    private final WebDavTransport transport;
+    private ExecutorService asyncExecutor;
 
     public WebDavRepository(WebDavConfiguration config) {
         this.config = config;
-        init();
+        this.transport = new WebDavTransport(config);
+    }
+
+    /**
+     * Closes all pooled connections. Lists obtained from this repository can not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdownNow();
+        }
+        transport.shutdown();
     }
 
-    private void init() {
-        client = new HttpClient();
-        if (config.getUsername() != null) {
-            client.getState().setCredentials(
-                new AuthScope(config.getAdress(), config.getPort()),
-                new UsernamePasswordCredentials(config.getUsername(), config.getPassword())
-            );
+    /**
+     * @return this repository with calls that return right away. The I/O is still blocking: the
+     * calls are queued for a pool with a thread per pooled connection to the host, since further
+     * threads would only wait for a connection. Any number of calls can be queued without needing
+     * more threads, but each one in progress holds a pool thread.
+     */
+    public synchronized AsyncRepository onIoThreads() {
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newFixedThreadPool(config.getMaxConnectionsPerHost(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("webdav-io-%d")
+                            .setDaemon(true)
+                            .build());
         }
+        return new AsyncRepositoryAdapter(this, asyncExecutor);
     }
 
     private String getFullWatchURL() {
@@ -85,81 +134,201 @@ public class WebDavRepository implements Repository {
         return new WebListDavRepository(name);
     }
 
-    private MultiStatusResponse[] doPropFind(String url) throws IOException {
-        DavMethod pFind = new PropFindMethod(url, DavConstants.PROPFIND_ALL_PROP, DavConstants.DEPTH_INFINITY);
-        client.executeMethod(pFind);
-        MultiStatus multiStatus;
+    /**
+     * @return the list stored as a single document instead of one file per item
+     * @see DocumentListRepository
+     */
+    public ConditionalListRepository getDocumentList(String name) {
+        return getDocumentList(name, 1);
+    }
+
+    /**
+     * @return the list stored as the given number of documents instead of one file per item.
+     * Every client of the list has to use the same number of shards. Items keep the order they
+     * were added in only within their shard: with more than one shard, the content lists the
+     * shards one after the other, not the items in the order they were added.
+     * @see DocumentListRepository
+     */
+    public ConditionalListRepository getDocumentList(String name, int shards) {
+        return new DocumentListRepository(transport, getFullWatchURL() + CheckItemCodec.encode(name) + "/", shards);
+    }
+
+    /**
+     * Sends a PROPFIND and hands each response of the multistatus to the consumer while it is
+     * read. A missing collection is reported as having no members, and created if
+     * {@code createIfMissing}; probes that only look for changes must not create anything.
+     */
+    private void doPropFind(String url, DavPropertyNameSet properties, int depth, boolean createIfMissing,
+                            Consumer<MultiStatusParser.Response> consumer) throws IOException {
+        DavMethod pFind = new UnparsedPropFindMethod(url, properties, depth);
         try {
-            multiStatus = pFind.getResponseBodyAsMultiStatus();
-        } catch (DavException e) {
-            System.err.println(e.getErrorCode());
-            if (e.getErrorCode() == 404) {
-                MkColMethod mkColMethod = new MkColMethod(url);
-                client.executeMethod(mkColMethod);
-                return new MultiStatusResponse[0];
+            int status = transport.execute(pFind);
+            if (status == 404) {
+                pFind.releaseConnection();
+                if (!createIfMissing) {
+                    LOGGER.debug("{} not found", url);
+                    return;
+                }
+                int mkColStatus = transport.executeAndRelease(new MkColMethod(url));
+                LOGGER.info("{} not found, mkcol resultcode: {}", url, mkColStatus);
+                return;
+            }
+            if (status != 207) {
+                throw new RemoteStatusException("PROPFIND " + url, status);
+            }
+            InputStream body = transport.responseBody(pFind);
+            if (body == null) {
+                throw new IOException("PROPFIND " + url + " returned no body");
             }
-            throw new IOException(e);
+            MultiStatusParser.parse(body, consumer);
+        } finally {
+            pFind.releaseConnection();
         }
-        return multiStatus.getResponses();
     }
 
     @Override
     public List<String> getLists() throws IOException {
-        MultiStatusResponse[] responses = doPropFind(getFullWatchURL());
-        return Arrays.stream(responses)
-            .map(multiStatusResponse -> multiStatusResponse.getHref().replaceFirst("/" + config.getWatchpath(), ""))
-            .filter(s -> !Strings.isNullOrEmpty(s) && !s.endsWith("/"))
-            .collect(Collectors.toList());
-
-        /*List<DavResource> list = sardine.list(getFullWatchURL());
-        return Lists.newArrayList(
-                Iterables.transform(
-                        Iterables.filter(list, new Predicate<DavResource>() {
-                            @Override
-                            public boolean apply(DavResource input) {
-                                return input.isDirectory();
-                            }
-                        }),
-                        new Function<DavResource, String>() {
-                            @Override
-                            public String apply(DavResource input) {
-                                return input.getName();
-                            }
-                        }
-                )
-        );*/
+        return new ArrayList<>(getListTags().keySet());
+    }
+
+    /**
+     * Reads the change tags of all lists with one Depth-1 PROPFIND of the watch path.
+     */
+    @Override
+    public Map<String, String> getListTags() throws IOException {
+        final String watchPath = "/" + config.getWatchpath();
+        final Map<String, String> tags = new LinkedHashMap<>();
+        doPropFind(getFullWatchURL(), LIST_TAG_PROPERTIES, DavConstants.DEPTH_1, false, response -> {
+            if (!response.isCollection()) {
+                return;
+            }
+            String name = decodeName(response.getHref().replaceFirst(watchPath, ""));
+            if (!name.isEmpty()) {
+                tags.put(name, response.getChangeTag());
+            }
+        });
+        return tags;
+    }
+
+    private static String decodeName(String hrefPart) {
+        String name = hrefPart.replaceAll("^/+", "").replaceAll("/+$", "");
+        try {
+            return URLDecoder.decode(name, Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * jackrabbit parses multistatus responses while reading them, which does not work for
+     * gzip-encoded bodies. This leaves the body to {@link WebDavTransport#responseBody}.
+     */
+    private static class UnparsedPropFindMethod extends PropFindMethod {
+
+        UnparsedPropFindMethod(String uri, DavPropertyNameSet propNameSet, int depth) throws IOException {
+            super(uri, propNameSet, depth);
+        }
+
+        @Override
+        protected void processResponseBody(HttpState httpState, HttpConnection httpConnection) {
+            // the body is read by the caller
+        }
     }
 
-    private class WebListDavRepository implements ListRepository {
+    private static class DatedItem {
+        final long lastModified;
+        final CheckItem item;
+
+        DatedItem(long lastModified, CheckItem item) {
+            this.lastModified = lastModified;
+            this.item = item;
+        }
+    }
+
+    private class WebListDavRepository implements ConditionalListRepository {
+        private static final int ITEM_URL_CACHE_SIZE = 1024;
+
         private final String listName;
+        private final String itemBaseUrl;
+        private final LoadingCache<CheckItem, String> itemUrls = CacheBuilder.newBuilder()
+                .maximumSize(ITEM_URL_CACHE_SIZE)
+                .build(new CacheLoader<CheckItem, String>() {
+                    @Override
+                    public String load(CheckItem item) {
+                        return itemBaseUrl + CheckItemCodec.encodeItem(item);
+                    }
+                });
+        private volatile String lastSeenTag;
 
         public WebListDavRepository(String listName) {
             this.listName = listName;
+            this.itemBaseUrl = getFullWatchURL() + "/" + CheckItemCodec.encode(listName) + "/";
+        }
+
+        private String listUrl() {
+            return getFullWatchURL() + "/" + listName;
         }
 
         @Override
-        public synchronized List<CheckItem> getContent() throws IOException {
-            MultiStatusResponse[] responses = doPropFind(getFullWatchURL() + "/" + listName);
-            List<MultiStatusResponse> sourceList = Arrays.asList(responses);
-            sourceList.sort((o1, o2) -> {
-                String l1 = (String) o1.getProperties(200).get(DavPropertyName.GETLASTMODIFIED).getValue();
-                String l2 = (String) o2.getProperties(200).get(DavPropertyName.GETLASTMODIFIED).getValue();
-                return ComparisonChain.start().compare(doParseHttpDate(l1), doParseHttpDate(l2)).result();
+        public boolean hasChanged() throws IOException {
+            String seen = lastSeenTag;
+            if (seen == null) {
+                return true;
+            }
+            final String[] current = new String[1];
+            final boolean[] found = new boolean[1];
+            doPropFind(listUrl(), CHANGE_TAG_PROPERTIES, DavConstants.DEPTH_0, false, response -> {
+                found[0] = true;
+                current[0] = response.getChangeTag();
             });
-            return sourceList.stream().map(input -> input.getHref()
-                    .replaceFirst("/" + config.getWatchpath() + "/" + listName + "/", "")
-                    .replaceAll("^\\/*", "")).filter(input -> !input.isEmpty()).map(input -> {
-                    try {
-                        String unescaped = URLDecoder.decode(input, Charsets.UTF_8.name());
-                        return CheckItem.fromString(unescaped);
-                    } catch (UnsupportedEncodingException e) {
-                        throw new IllegalStateException(e);
-                    }
-                })
-                .sorted((o1, o2) -> ComparisonChain.start()
-                    .compareFalseFirst(o1.isChecked(), o2.isChecked())
-                    .result())
-                .collect(Collectors.toList());
+            if (!found[0]) {
+                return true;
+            }
+            LOGGER.debug("change tag of {}: {} (last seen {})", listName, current[0], seen);
+            return current[0] == null || !current[0].equals(seen);
+        }
+
+        /**
+         * Builds the items while the multistatus is read, keeping only each item and its
+         * lastmodified.
+         */
+        @Override
+        public List<CheckItem> getContent() throws IOException {
+            final List<DatedItem> items = new ArrayList<>();
+            final String[] collectionTag = new String[1];
+            doPropFind(listUrl(), SYNC_PROPERTIES, DavConstants.DEPTH_1, true, response -> {
+                if (collectionTag[0] == null && response.isCollection()) {
+                    collectionTag[0] = response.getChangeTag();
+                }
+                if (response.isCollection()) {
+                    return;
+                }
+                CheckItem item = CheckItemCodec.decodeItem(response.getHref());
+                if (item != null) {
+                    items.add(new DatedItem(lastModified(response.getLastModified()), item));
+                }
+            });
+            lastSeenTag = collectionTag[0];
+            items.sort((o1, o2) -> ComparisonChain.start()
+                    .compareFalseFirst(o1.item.isChecked(), o2.item.isChecked())
+                    .compare(o1.lastModified, o2.lastModified)
+                    .result());
+            List<CheckItem> content = new ArrayList<>(items.size());
+            for (DatedItem item : items) {
+                content.add(item.item);
+            }
+            return content;
+        }
+
+        private long lastModified(String value) {
+            if (value == null) {
+                return 0;
+            }
+            long parsed = CheckItemCodec.parseHttpDate(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+            return doParseHttpDate(value).getTime();
         }
 
         private Date doParseHttpDate(String l1) {
@@ -170,38 +339,70 @@ public class WebDavRepository implements Repository {
             }
         }
 
-        /* need to synchronize these. client is not thread-save*/
+        /*
+         * The operations are idempotent, so one can be repeated after its response got lost: an
+         * item that is already gone counts as removed, and a toggle whose source is gone makes
+         * sure the toggled item exists.
+         */
+
         @Override
-        public synchronized void remove(CheckItem item) throws IOException {
+        public void remove(CheckItem item) throws IOException {
             DeleteMethod deleteMethod = new DeleteMethod(itemUrl(item));
-            int code = client.executeMethod(deleteMethod);
-            LOGGER.info("upload resultcode: {}", code);
+            int code = transport.executeAndRelease(deleteMethod);
+            LOGGER.info("delete resultcode: {}", code);
+            if (code != 404 && !(code >= 400 && isMissing(itemUrl(item)))) {
+                RemoteStatusException.check("DELETE " + deleteMethod.getPath(), code);
+            }
         }
 
         @Override
-        public synchronized void add(CheckItem item) throws IOException {
-            PutMethod putMethod = new PutMethod(itemUrl(item));
-            putMethod.setRequestEntity(new ByteArrayRequestEntity(new byte[0]));
-            int code = client.executeMethod(putMethod);
-            LOGGER.info("upload resultcode: {}", code);
+        public void add(CheckItem item) throws IOException {
+            put(itemUrl(item), false);
         }
 
         @Override
-        public synchronized void toggle(CheckItem newItem) throws IOException {
+        public void toggle(CheckItem newItem) throws IOException {
+            String oldUrl = itemUrl(newItem);
             String newUrl = itemUrl(newItem.toggleChecked());
-            MoveMethod moveMethod = new MoveMethod(itemUrl(newItem), newUrl, true);
-            int code = client.executeMethod(moveMethod);
+            MoveMethod moveMethod = new MoveMethod(oldUrl, newUrl, true);
+            int code = transport.executeAndRelease(moveMethod);
             LOGGER.info("move resultcode: {}", code);
-            PutMethod putMethod = new PutMethod(newUrl);
+            // not every server answers 404 when the source is gone
+            boolean sourceMissing = code == 404 || (code >= 400 && isMissing(oldUrl));
+            if (!sourceMissing) {
+                RemoteStatusException.check("MOVE " + moveMethod.getPath(), code);
+            }
+            if (config.getToggleStrategy() == WebDavConfiguration.ToggleStrategy.MOVE) {
+                if (sourceMissing) {
+                    put(newUrl, true);
+                }
+                return;
+            }
+            put(newUrl, false);
+        }
+
+        private boolean isMissing(String url) throws IOException {
+            return transport.executeAndRelease(new HeadMethod(url)) == 404;
+        }
+
+        /**
+         * @param ifAbsent only create the item, leave it alone if it exists
+         */
+        private void put(String url, boolean ifAbsent) throws IOException {
+            PutMethod putMethod = new PutMethod(url);
             putMethod.setRequestEntity(new ByteArrayRequestEntity(new byte[0]));
-            int code2 = client.executeMethod(putMethod);
-            LOGGER.info("update-put resultcode: {}", code2);
+            if (ifAbsent) {
+                putMethod.setRequestHeader("If-None-Match", "*");
+            }
+            int code = transport.executeAndRelease(putMethod);
+            LOGGER.info("put resultcode: {}", code);
+            if (!(ifAbsent && code == 412)) {
+                RemoteStatusException.check("PUT " + putMethod.getPath(), code);
+            }
         }
 
-        private String itemUrl(CheckItem item) throws MalformedURLException, UnsupportedEncodingException {
-            String encodedListName = URLEncoder.encode(listName, Charsets.UTF_8.name()).replace("+", "%20");
-            String encodedItem = URLEncoder.encode(item.toString(), Charsets.UTF_8.name()).replace("+", "%20");
-            return Joiner.on("/").join(getFullWatchURL(), encodedListName, encodedItem);
+        private String itemUrl(CheckItem item) {
+            return itemUrls.getUnchecked(item);
         }
     }
 }
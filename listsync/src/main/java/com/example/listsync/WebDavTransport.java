@@ -0,0 +1,199 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.example.listsync.metrics.Counter;
+import com.example.listsync.metrics.MetricsRegistry;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Thread-safe HTTP transport shared by all lists of a {@link WebDavRepository}.
+ * <p>
+ * Connections are pooled and kept alive between requests. Since all https connections are created
+ * by the same socket factory, TLS sessions are resumed instead of doing a full handshake for every
+ * new connection.
+ */
+class WebDavTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebDavTransport.class);
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient client;
+    private final boolean gzip;
+    private final MetricsRegistry metrics;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final Counter retries;
+    private final CircuitBreaker circuitBreaker;
+
+    WebDavTransport(WebDavConfiguration config) {
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setMaxTotalConnections(config.getMaxConnections());
+        params.setDefaultMaxConnectionsPerHost(config.getMaxConnectionsPerHost());
+        params.setConnectionTimeout(config.getConnectionTimeout());
+        params.setSoTimeout(config.getSocketTimeout());
+        params.setStaleCheckingEnabled(true);
+        client = new HttpClient(connectionManager);
+        if (config.getUsername() != null) {
+            client.getState().setCredentials(
+                new AuthScope(config.getAdress(), config.getPort()),
+                new UsernamePasswordCredentials(config.getUsername(), config.getPassword())
+            );
+            // saves the 401 round trip on every request
+            client.getParams().setAuthenticationPreemptive(true);
+        }
+        gzip = config.isGzip();
+        metrics = config.getMetrics();
+        bytesIn = metrics.counter(SyncMetrics.BYTES_IN);
+        bytesOut = metrics.counter(SyncMetrics.BYTES_OUT);
+        retries = metrics.counter(SyncMetrics.RETRIES);
+        circuitBreaker = new CircuitBreaker(config.getBaseUrl(), config.getCircuitFailureThreshold(),
+                config.getCircuitOpenDuration(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executes the method. The caller has to call {@link HttpMethod#releaseConnection()} when done
+     * with the response, or the connection is never returned to the pool.
+     *
+     * @throws CircuitBreaker.OpenException without sending the request if the server failed too
+     *                                      often recently
+     */
+    int execute(HttpMethod method) throws IOException {
+        circuitBreaker.acquire();
+        // whatever ends the request without a good answer counts as a failure, so a probe of a half
+        // open circuit is never left hanging
+        boolean succeeded = false;
+        long start = System.nanoTime();
+        try {
+            if (gzip) {
+                method.setRequestHeader("Accept-Encoding", "gzip");
+            }
+            if (method instanceof EntityEnclosingMethod) {
+                RequestEntity entity = ((EntityEnclosingMethod) method).getRequestEntity();
+                if (entity != null && entity.getContentLength() > 0) {
+                    bytesOut.add(entity.getContentLength());
+                }
+            }
+            int status = client.executeMethod(method);
+            succeeded = status < 500;
+            if (succeeded) {
+                circuitBreaker.succeeded();
+            }
+            return status;
+        } finally {
+            if (!succeeded) {
+                circuitBreaker.failed();
+            }
+            metrics.histogram(SyncMetrics.REQUEST + method.getName()).recordSince(start);
+        }
+    }
+
+    /**
+     * Executes the method, ignores the response body and releases the connection.
+     */
+    int executeAndRelease(HttpMethod method) throws IOException {
+        try {
+            return execute(method);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * @return the response body, decompressed if the server sent it gzip-encoded, or null if there
+     * is no body
+     */
+    InputStream responseBody(HttpMethod method) throws IOException {
+        InputStream body = method.getResponseBodyAsStream();
+        if (body == null) {
+            return null;
+        }
+        body = new CountingInputStream(body, bytesIn);
+        Header encoding = method.getResponseHeader("Content-Encoding");
+        if (encoding != null && encoding.getValue().toLowerCase().contains("gzip")) {
+            return new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Counts a request that is repeated, e.g. because of a conflict.
+     */
+    void retried() {
+        retries.inc();
+    }
+
+    void shutdown() {
+        LOGGER.info("shutting down connection pool");
+        connectionManager.shutdown();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final Counter counter;
+
+        private CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result >= 0) {
+                counter.inc();
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                counter.add(result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            counter.add(result);
+            return result;
+        }
+    }
+
+}
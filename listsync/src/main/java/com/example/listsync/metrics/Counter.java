@@ -0,0 +1,44 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value that is only changed by adding to it. Adding negative amounts is allowed, so a counter
+ * can also track a quantity that goes up and down, like the length of a queue.
+ */
+public class Counter {
+
+    private final AtomicLong value = new AtomicLong();
+
+    public void inc() {
+        value.incrementAndGet();
+    }
+
+    public void add(long amount) {
+        value.addAndGet(amount);
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+}
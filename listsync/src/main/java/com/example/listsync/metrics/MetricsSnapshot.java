@@ -0,0 +1,82 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The values of all metrics of a {@link MetricsRegistry} at one point in time, sorted by name.
+ */
+public class MetricsSnapshot {
+
+    private final long timestamp;
+    private final Map<String, Long> counters;
+    private final Map<String, Double> gauges;
+    private final Map<String, Histogram.Snapshot> histograms;
+
+    MetricsSnapshot(long timestamp, Map<String, Long> counters, Map<String, Double> gauges,
+                    Map<String, Histogram.Snapshot> histograms) {
+        this.timestamp = timestamp;
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * @return when the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return the value of the counter, or 0 if it has not been used yet
+     */
+    public long getCounter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    public Map<String, Double> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, Histogram.Snapshot> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * @return the histogram, or null if nothing has been recorded in it yet
+     */
+    public Histogram.Snapshot getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "counters=" + counters + " gauges=" + gauges + " histograms=" + histograms;
+    }
+
+}
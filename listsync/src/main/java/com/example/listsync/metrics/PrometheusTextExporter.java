@@ -0,0 +1,78 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the metrics in the Prometheus text format. Names are prefixed with {@code listsync_}
+ * and dots become underscores; histograms are written as summaries in seconds.
+ */
+public class PrometheusTextExporter implements MetricsExporter {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final Writer writer;
+
+    public PrometheusTextExporter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void export(MetricsSnapshot snapshot) throws IOException {
+        for (Map.Entry<String, Long> entry : snapshot.getCounters().entrySet()) {
+            String name = name(entry.getKey());
+            writer.write("# TYPE " + name + " untyped\n");
+            writer.write(name + " " + entry.getValue() + "\n");
+        }
+        for (Map.Entry<String, Double> entry : snapshot.getGauges().entrySet()) {
+            String name = name(entry.getKey());
+            writer.write("# TYPE " + name + " gauge\n");
+            writer.write(name + " " + number(entry.getValue()) + "\n");
+        }
+        for (Map.Entry<String, Histogram.Snapshot> entry : snapshot.getHistograms().entrySet()) {
+            String name = name(entry.getKey()) + "_seconds";
+            Histogram.Snapshot histogram = entry.getValue();
+            writer.write("# TYPE " + name + " summary\n");
+            for (double quantile : QUANTILES) {
+                writer.write(name + "{quantile=\"" + quantile + "\"} " + seconds(histogram.getPercentile(quantile)) + "\n");
+            }
+            writer.write(name + "_sum " + seconds(histogram.getSum()) + "\n");
+            writer.write(name + "_count " + histogram.getCount() + "\n");
+        }
+        writer.flush();
+    }
+
+    private static String name(String metric) {
+        return "listsync_" + metric.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    private static String seconds(long micros) {
+        return number(micros / 1e6);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%s", value);
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Logs every metric on a line of its own. Uses a logger of its own, so the metrics can be logged
+ * without turning on info logging for the rest of listsync.
+ */
+public class Slf4jMetricsExporter implements MetricsExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Slf4jMetricsExporter.class);
+
+    @Override
+    public void export(MetricsSnapshot snapshot) {
+        if (!LOGGER.isInfoEnabled()) {
+            return;
+        }
+        for (Map.Entry<String, Long> entry : snapshot.getCounters().entrySet()) {
+            LOGGER.info("{} {}", entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Double> entry : snapshot.getGauges().entrySet()) {
+            LOGGER.info("{} {}", entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Histogram.Snapshot> entry : snapshot.getHistograms().entrySet()) {
+            LOGGER.info("{} {}", entry.getKey(), entry.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncListRepositoryAdapterTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCompletesExceptionallyWithTheFailureOfTheCall() throws Exception {
+        AsyncListRepository adapter = new AsyncListRepositoryAdapter(new FakeListRepository() {
+            @Override
+            public void add(CheckItem item) throws IOException {
+                throw new RemoteStatusException("PUT " + item, 503);
+            }
+        }, executor);
+
+        try {
+            adapter.add(new CheckItem("foo")).get();
+            fail("expected the call to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RemoteStatusException.class));
+        }
+    }
+
+    @Test
+    public void testCallsRejectedByAShutDownExecutorFailWithAnIOException() throws Exception {
+        AsyncListRepository adapter = new AsyncListRepositoryAdapter(new FakeListRepository(), executor);
+        executor.shutdown();
+
+        try {
+            adapter.add(new CheckItem("foo")).get();
+            fail("expected the call to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+    }
+
+    @Test
+    public void testCancellingInterruptsTheCall() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        AsyncListRepository adapter = new AsyncListRepositoryAdapter(new FakeListRepository() {
+            @Override
+            public List<CheckItem> getContent() throws IOException {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                throw new IOException("interrupted");
+            }
+        }, executor);
+
+        CompletableFuture<List<CheckItem>> content = adapter.getContent();
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        content.cancel(true);
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testOnlyAsksConditionalRepositoriesForChanges() throws Exception {
+        AsyncListRepository adapter = new AsyncListRepositoryAdapter(new FakeListRepository(), executor);
+
+        assertThat(adapter.hasChanged().get(), is(true));
+    }
+
+    private static class FakeListRepository implements ListRepository {
+        @Override
+        public List<CheckItem> getContent() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void remove(CheckItem item) throws IOException {
+        }
+
+        @Override
+        public void add(CheckItem item) throws IOException {
+        }
+
+        @Override
+        public void toggle(CheckItem item) throws IOException {
+        }
+    }
+
+}
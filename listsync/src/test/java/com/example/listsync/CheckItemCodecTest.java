@@ -0,0 +1,73 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.junit.Test;
+
+import java.net.URLEncoder;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CheckItemCodecTest {
+
+    @Test
+    public void testEncodesLikeUrlEncoder() throws Exception {
+        for (String text : new String[]{"milk", "two words", "a+b/c?d", "Bäckerei ✔ 🍞", "50% off*", "~tilde"}) {
+            CheckItem item = new CheckItem(text, true);
+            String expected = URLEncoder.encode(item.toString(), Charsets.UTF_8.name()).replace("+", "%20");
+            assertThat(CheckItemCodec.encodeItem(item), is(expected));
+        }
+    }
+
+    @Test
+    public void testDecodesWhatItEncodes() throws Exception {
+        for (String text : new String[]{"milk", "two words", "a+b/c?d", "Bäckerei ✔ 🍞", "50% off*"}) {
+            for (boolean checked : new boolean[]{false, true}) {
+                CheckItem item = new CheckItem(text, checked);
+                String href = "/dav/lists/shopping%20list/" + CheckItemCodec.encodeItem(item);
+                assertThat(CheckItemCodec.decodeItem(href), is(item));
+            }
+        }
+    }
+
+    @Test
+    public void testDecodesUnescapedHrefs() throws Exception {
+        assertThat(CheckItemCodec.decodeItem("/lists/shopping/[✔] a+b"), is(new CheckItem("a+b", true)));
+        assertThat(CheckItemCodec.decodeItem("/lists/shopping/[_] 100%"), is(new CheckItem("100%")));
+    }
+
+    @Test
+    public void testIgnoresHrefsThatAreNoItems() throws Exception {
+        assertThat(CheckItemCodec.decodeItem("/lists/shopping/"), is(nullValue()));
+        assertThat(CheckItemCodec.decodeItem("/lists/shopping/readme.txt"), is(nullValue()));
+    }
+
+    @Test
+    public void testParsesHttpDates() throws Exception {
+        String date = "Sun, 06 Nov 1994 08:49:37 GMT";
+        assertThat(CheckItemCodec.parseHttpDate(date), is(DateUtil.parseDate(date).getTime()));
+        assertThat(CheckItemCodec.parseHttpDate("Sunday, 06-Nov-94 08:49:37 GMT"), is(-1L));
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterFailuresInARow() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("server", 3, 1, TimeUnit.HOURS);
+        breaker.failed();
+        breaker.failed();
+        breaker.succeeded();
+        breaker.failed();
+        breaker.failed();
+        breaker.acquire();
+        breaker.failed();
+        assertThat(breaker.isOpen(), is(true));
+        try {
+            breaker.acquire();
+            fail("circuit should be open");
+        } catch (CircuitBreaker.OpenException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLetsOneRequestThroughAfterOpenDuration() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("server", 1, 1, TimeUnit.MILLISECONDS);
+        breaker.failed();
+        Thread.sleep(5);
+        breaker.acquire();
+        try {
+            breaker.acquire();
+            fail("only one request may probe the server");
+        } catch (CircuitBreaker.OpenException e) {
+            // expected
+        }
+        breaker.succeeded();
+        assertThat(breaker.isOpen(), is(false));
+        breaker.acquire();
+    }
+
+    @Test
+    public void testLetsAnotherRequestThroughAfterAnAbandonedProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("server", 1, 1, TimeUnit.MILLISECONDS);
+        breaker.failed();
+        Thread.sleep(5);
+        breaker.acquire();
+        // the probe ended without an answer, e.g. with a RuntimeException
+        breaker.failed();
+        assertThat(breaker.isOpen(), is(true));
+        Thread.sleep(5);
+        breaker.acquire();
+        breaker.succeeded();
+        assertThat(breaker.isOpen(), is(false));
+    }
+
+}
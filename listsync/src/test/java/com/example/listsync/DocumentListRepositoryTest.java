@@ -0,0 +1,46 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DocumentListRepositoryTest {
+
+    @Test
+    public void testDecodesWhatItEncodes() throws Exception {
+        List<CheckItem> items = Arrays.asList(
+                new CheckItem("milk"),
+                new CheckItem("two\nlines", true),
+                new CheckItem("carriage\rreturn"),
+                new CheckItem("windows\r\nline"),
+                new CheckItem("back\\slash\\n", true),
+                new CheckItem("Bäckerei ✔ 🍞"));
+        byte[] document = DocumentListRepository.encode(items);
+        assertThat(DocumentListRepository.decode(new ByteArrayInputStream(document)), is(items));
+    }
+
+}
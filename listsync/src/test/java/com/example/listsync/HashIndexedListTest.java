@@ -0,0 +1,85 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HashIndexedListTest {
+
+    private final HashIndexedList<String> list = new HashIndexedList<>();
+
+    @Test
+    public void testKeepsInsertionOrder() throws Exception {
+        list.addAll(Arrays.asList("a", "b", "c"));
+        assertThat(list, contains("a", "b", "c"));
+    }
+
+    @Test
+    public void testIgnoresDuplicates() throws Exception {
+        assertThat(list.add("a"), is(true));
+        assertThat(list.add("a"), is(false));
+        assertThat(list.size(), is(1));
+    }
+
+    @Test
+    public void testPositionsAreDenseAfterRemoval() throws Exception {
+        list.addAll(Arrays.asList("a", "b", "c", "d"));
+        list.remove("b");
+        list.remove("c");
+        assertThat(list.size(), is(2));
+        assertThat(list.get(1), is("d"));
+        assertThat(list.indexOf("d"), is(1));
+        assertThat(list.contains("b"), is(false));
+    }
+
+    @Test
+    public void testReaddedItemGoesToTheEnd() throws Exception {
+        list.addAll(Arrays.asList("a", "b", "c"));
+        list.remove("a");
+        list.add("a");
+        assertThat(list, contains("b", "c", "a"));
+    }
+
+    @Test
+    public void testBehavesLikeArrayListUnderChurn() throws Exception {
+        List<String> reference = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String item = Integer.toString(i % 97);
+            if (reference.contains(item)) {
+                reference.remove(item);
+                list.remove(item);
+            } else {
+                reference.add(item);
+                list.add(item);
+            }
+        }
+        assertThat(list, is(reference));
+        assertThat(reference, is((List<String>) list));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InMemoryRepositoryTest {
+
+    @Test
+    public void testKeepsUncheckedItemsFirst() throws Exception {
+        ListRepository list = InMemoryRepository.builder().build().getList("list");
+        list.add(new CheckItem("a"));
+        list.add(new CheckItem("b"));
+        list.toggle(new CheckItem("a"));
+        list.add(new CheckItem("c"));
+        assertThat(list.getContent(), contains(new CheckItem("b"), new CheckItem("c"), new CheckItem("a", true)));
+    }
+
+    @Test
+    public void testHasChangedSeesWritesOfOtherClients() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder().build();
+        ConditionalListRepository list = repository.getList("list");
+        assertThat(list.hasChanged(), is(true));
+        list.getContent();
+        assertThat(list.hasChanged(), is(false));
+        repository.getList("list").add(new CheckItem("a"));
+        assertThat(list.hasChanged(), is(true));
+        assertThat(repository.getListTags().keySet(), contains("list"));
+    }
+
+    @Test
+    public void testFailuresAreDeterministicUnderASeed() throws Exception {
+        List<Integer> failed = failedAdds(42);
+        assertThat(failed, is(failedAdds(42)));
+        assertThat(failed.size() > 0 && failed.size() < 100, is(true));
+    }
+
+    private static List<Integer> failedAdds(long seed) {
+        ListRepository list = InMemoryRepository.builder().seed(seed).failureRate(0.3).build().getList("list");
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            try {
+                list.add(new CheckItem("item " + i));
+            } catch (IOException e) {
+                failed.add(i);
+            }
+        }
+        return failed;
+    }
+
+    @Test
+    public void testPartialFailuresTakeEffect() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder().partialFailureRate(1).build();
+        try {
+            repository.getList("list").add(new CheckItem("a"));
+        } catch (IOException e) {
+            assertThat(repository.getStoredContent("list"), contains(new CheckItem("a")));
+            return;
+        }
+        throw new AssertionError("add did not fail");
+    }
+
+    @Test
+    public void testLimitsRequestRate() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder()
+                .latency(InMemoryRepository.Latency.uniform(1, 2, TimeUnit.MILLISECONDS))
+                .maxRequestsPerSecond(200)
+                .build();
+        ListRepository list = repository.getList("list");
+        long start = System.nanoTime();
+        for (int i = 0; i < 21; i++) {
+            list.add(new CheckItem("item " + i));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(100L));
+        assertThat(repository.getRequestCount(), is(21L));
+    }
+
+    @Test
+    public void testOtherDeviceChangesTheList() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder().build();
+        Closeable device = repository.startOtherDevice("list", 500);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (repository.getStoredContent("list").size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        device.close();
+        repository.close();
+        assertThat(repository.getStoredContent("list").size(), greaterThanOrEqualTo(3));
+    }
+
+    @Test
+    public void testListSyncerUploadsABacklog() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder().build();
+        ListSyncer syncer = new ListSyncer(repository.getList("list"));
+        for (int i = 0; i < 1000; i++) {
+            syncer.add(new CheckItem("item " + i));
+        }
+        syncer.run();
+        assertThat(repository.getStoredContent("list").size(), is(1000));
+        assertThat(syncer.getLocal().size(), is(1000));
+        syncer.close();
+    }
+
+    @Test
+    public void testListSyncerConvergesDespiteFailures() throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder()
+                .seed(7)
+                .failureRate(0.3)
+                .partialFailureRate(0.2)
+                .build();
+        ListSyncer syncer = new ListSyncer(repository.getList("list"), SyncConfiguration.builder()
+                .retryBackoff(0, 0, TimeUnit.MILLISECONDS).build());
+        for (int i = 0; i < 200; i++) {
+            syncer.add(new CheckItem("item " + i));
+        }
+        for (int i = 0; i < 200; i += 2) {
+            syncer.toggle(new CheckItem("item " + i));
+        }
+        for (int cycle = 0; cycle < 50 && syncer.getPendingOperations() > 0; cycle++) {
+            syncer.run();
+        }
+        assertThat(syncer.getPendingOperations(), is(0));
+        List<CheckItem> stored = repository.getStoredContent("list");
+        assertThat(stored.size(), is(200));
+        int checked = 0;
+        for (CheckItem item : stored) {
+            checked += item.isChecked() ? 1 : 0;
+        }
+        assertThat(checked, is(100));
+        syncer.close();
+    }
+
+}
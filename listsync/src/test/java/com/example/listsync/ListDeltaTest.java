@@ -0,0 +1,93 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ListDeltaTest {
+
+    private final CheckItem foo = new CheckItem("foo");
+    private final CheckItem bar = new CheckItem("bar");
+    private final CheckItem baz = new CheckItem("baz");
+
+    @Test
+    public void testEqualListsHaveEmptyDelta() throws Exception {
+        ListDelta delta = ListDelta.between(Arrays.asList(foo, bar), Arrays.asList(foo, bar));
+        assertThat(delta.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testIgnoresDuplicates() throws Exception {
+        ListDelta delta = ListDelta.between(Arrays.asList(foo, bar), Arrays.asList(foo, bar, foo));
+        assertThat(delta.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testDetectsAddedAndRemoved() throws Exception {
+        ListDelta delta = ListDelta.between(Arrays.asList(foo, bar), Arrays.asList(bar, baz));
+        assertThat(delta.getAdded(), contains(baz));
+        assertThat(delta.getRemoved(), contains(foo));
+        assertThat(delta.getToggled(), is(empty()));
+        assertThat(delta.getMoves(), is(empty()));
+    }
+
+    @Test
+    public void testToggleIsNotReportedAsAddAndRemove() throws Exception {
+        ListDelta delta = ListDelta.between(Arrays.asList(foo, bar), Arrays.asList(foo, bar.toggleChecked()));
+        assertThat(delta.getAdded(), is(empty()));
+        assertThat(delta.getRemoved(), is(empty()));
+        assertThat(delta.getToggled(), contains(bar.toggleChecked()));
+    }
+
+    @Test
+    public void testReportsOnlyTheMovedItem() throws Exception {
+        ListDelta delta = ListDelta.between(Arrays.asList(foo, bar, baz), Arrays.asList(bar, baz, foo));
+        assertThat(delta.getMoves(), contains(new ListDelta.Move(foo, 0, 2)));
+    }
+
+    @Test
+    public void testFromEmptyList() throws Exception {
+        ListDelta delta = ListDelta.between(Collections.<CheckItem>emptyList(), Arrays.asList(foo, bar));
+        assertThat(delta.getAdded(), contains(foo, bar));
+        assertThat(delta.getMoves(), is(empty()));
+    }
+
+    @Test
+    public void testTellsCheckedAndUncheckedItemWithTheSameTextApart() throws Exception {
+        CheckItem checkedFoo = foo.toggleChecked();
+        ListDelta unchanged = ListDelta.between(Arrays.asList(foo, checkedFoo, bar), Arrays.asList(foo, checkedFoo, bar));
+        assertThat(unchanged.isEmpty(), is(true));
+
+        ListDelta delta = ListDelta.between(Arrays.asList(foo, checkedFoo, bar), Arrays.asList(checkedFoo, bar));
+        assertThat(delta.getRemoved(), contains(foo));
+        assertThat(delta.getToggled(), is(empty()));
+        assertThat(delta.getAdded(), is(empty()));
+        assertThat(delta.getMoves(), is(empty()));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.example.listsync.metrics.MetricsRegistry;
+import com.google.common.base.Charsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ListSyncMirrorTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private InMemoryRepository repository;
+    private ListSyncMirror mirror;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = InMemoryRepository.builder().build();
+        directory = temporaryFolder.getRoot();
+        File state = ListSyncMirror.stateDirectory(directory);
+        SyncConfiguration config = SyncConfiguration.builder()
+                .journalDirectory(state)
+                .replicaDirectory(state)
+                .coldRefreshInterval(0, TimeUnit.MILLISECONDS)
+                .metrics(new MetricsRegistry())
+                .build();
+        mirror = new ListSyncMirror(repository, directory, config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mirror.close();
+    }
+
+    @Test
+    public void testWritesEveryListIntoTheDirectory() throws Exception {
+        repository.getList("shopping").add(new CheckItem("milk"));
+        repository.getList("shopping").add(new CheckItem("bread", true));
+        repository.getList("todo list").add(new CheckItem("taxes"));
+
+        ListSyncMirror.Cycle cycle = mirror.runCycle();
+
+        assertThat(cycle.getLists(), is(2));
+        assertThat(cycle.getRefreshed(), is(2));
+        assertThat(read("shopping.list"), contains("[_] milk", "[✔] bread"));
+        assertThat(read("todo+list.list"), contains("[_] taxes"));
+    }
+
+    @Test
+    public void testPerformsCommandFilesAndDeletesThem() throws Exception {
+        repository.getList("shopping").add(new CheckItem("bread"));
+        mirror.runCycle();
+        File commands = new File(new File(directory, ListSyncMirror.COMMAND_DIRECTORY), "001.txt");
+        Files.write(commands.toPath(), Arrays.asList("add shopping milk", "", "toggle shopping bread"), Charsets.UTF_8);
+
+        ListSyncMirror.Cycle cycle = mirror.runCycle();
+
+        assertThat(cycle.getCommands(), is(2));
+        assertThat(cycle.getPending(), is(0));
+        assertThat(commands.exists(), is(false));
+        assertThat(repository.getStoredContent("shopping"), containsInAnyOrder(new CheckItem("milk"), new CheckItem("bread", true)));
+        assertThat(read("shopping.list"), containsInAnyOrder("[_] milk", "[✔] bread"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEditsOfUnknownItems() throws Exception {
+        mirror.execute("toggle shopping milk");
+    }
+
+    @Test
+    public void testDoesNotCreateListsItIsOnlyAskedAbout() throws Exception {
+        for (String command : Arrays.asList("show shopping", "toggle shopping milk", "remove shopping milk")) {
+            try {
+                mirror.execute(command);
+                fail(command + " should fail for a missing list");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), is("no list shopping"));
+            }
+        }
+
+        assertThat(mirror.runCycle().getLists(), is(0));
+        assertThat(repository.getLists(), is(empty()));
+    }
+
+    private List<String> read(String name) throws Exception {
+        return Files.readAllLines(new File(directory, name).toPath(), Charsets.UTF_8);
+    }
+
+}
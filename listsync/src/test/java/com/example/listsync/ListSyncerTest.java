@@ -19,6 +19,8 @@
 
 package com.example.listsync;
 
+import com.example.listsync.metrics.MetricsRegistry;
+import com.example.listsync.metrics.MetricsSnapshot;
 import org.jmock.Expectations;
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
@@ -27,7 +29,11 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -220,4 +226,331 @@ public class ListSyncerTest {
         listSyncer.run();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testDuplicateRemoteItemsDoNotReportAChangeOnEveryRefresh() throws Exception {
+        final Consumer mock = context.mock(Consumer.class);
+        listSyncer.registerChangeListener(mock);
+        context.checking(new Expectations() {{
+            CheckItem anItem = new CheckItem("foo");
+            exactly(2).of(repository).getContent();
+            will(returnValue(Arrays.asList(anItem, anItem)));
+            oneOf(mock).consume(Arrays.asList(anItem));
+        }});
+        listSyncer.run();
+        listSyncer.run();
+    }
+
+    @Test
+    public void testSkipsRefreshWhenConditionalRepositoryIsUnchanged() throws Exception {
+        final ConditionalListRepository conditional = context.mock(ConditionalListRepository.class);
+        final CheckItem anItem = new CheckItem("foo");
+        ListSyncer syncer = new ListSyncer(Arrays.asList(anItem), conditional);
+        context.checking(new Expectations(){{
+            oneOf(conditional).hasChanged();
+            will(returnValue(false));
+            never(conditional).getContent();
+        }});
+
+        syncer.run();
+
+        assertThat(syncer.getLocal(), contains(anItem));
+    }
+
+    @Test
+    public void testPerformsOperationsOnDifferentItemsConcurrently() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final List<CheckItem> added = Collections.synchronizedList(new ArrayList<CheckItem>());
+        ListSyncer syncer = new ListSyncer(new ListRepository() {
+            @Override
+            public List<CheckItem> getContent() {
+                return new ArrayList<>(added);
+            }
+
+            @Override
+            public void remove(CheckItem item) {
+            }
+
+            @Override
+            public void add(CheckItem item) throws IOException {
+                bothStarted.countDown();
+                try {
+                    if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                        throw new IOException("operations were not performed concurrently");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                added.add(item);
+            }
+
+            @Override
+            public void toggle(CheckItem item) {
+            }
+        });
+        final List<Exception> exceptions = new ArrayList<>();
+        syncer.registerExceptionHandler(new Consumer<Exception>() {
+            @Override
+            public void consume(Exception value) {
+                exceptions.add(value);
+            }
+        });
+        syncer.add(new CheckItem("foo"));
+        syncer.add(new CheckItem("bar"));
+
+        syncer.run();
+
+        assertThat(exceptions.isEmpty(), is(true));
+        assertThat(syncer.getLocal(), containsInAnyOrder(new CheckItem("foo"), new CheckItem("bar")));
+    }
+
+    @Test
+    public void testLocalSnapshotIsStable() throws Exception {
+        final CheckItem anItem = new CheckItem("foo");
+        List<CheckItem> before = listSyncer.getLocal();
+        long version = listSyncer.getSnapshot().getVersion();
+
+        listSyncer.add(anItem);
+
+        assertThat(before.isEmpty(), is(true));
+        assertThat(listSyncer.getLocal(), contains(anItem));
+        assertThat(listSyncer.hasChangedSince(version), is(true));
+        assertThat(listSyncer.hasChangedSince(listSyncer.getSnapshot().getVersion()), is(false));
+    }
+
+    @Test
+    public void testRapidTogglesKeepOnePendingOperationPerItem() throws Exception {
+        final CheckItem foo = new CheckItem("foo");
+        final CheckItem bar = new CheckItem("bar");
+        listSyncer.add(foo);
+        listSyncer.add(bar);
+        for (int i = 0; i < 101; i++) {
+            listSyncer.toggle(i % 2 == 0 ? foo : foo.toggleChecked());
+            assertThat(listSyncer.getPendingOperations(), is(2));
+        }
+
+        context.checking(new Expectations(){{
+            oneOf(repository).add(foo.toggleChecked());
+            oneOf(repository).add(bar);
+            allowing(repository).getContent();
+            will(returnValue(Arrays.asList(bar, foo.toggleChecked())));
+        }});
+        listSyncer.run();
+
+        assertThat(listSyncer.getPendingOperations(), is(0));
+    }
+
+    @Test
+    public void testRecordsMetrics() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        ListSyncer syncer = new ListSyncer(repository, SyncConfiguration.builder().metrics(metrics).build());
+        final CheckItem anItem = new CheckItem("foo");
+        syncer.add(anItem);
+        syncer.toggle(anItem);
+        syncer.add(new CheckItem("bar"));
+        syncer.remove(new CheckItem("bar"));
+        assertThat(metrics.snapshot().getCounter(SyncMetrics.QUEUE_DEPTH), is(1L));
+
+        context.checking(new Expectations(){{
+            oneOf(repository).add(anItem.toggleChecked());
+            allowing(repository).getContent();
+            will(returnValue(Arrays.asList(anItem.toggleChecked(), new CheckItem("added remote"))));
+        }});
+        syncer.run();
+        syncer.run();
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getCounter(SyncMetrics.QUEUED), is(4L));
+        assertThat(snapshot.getCounter(SyncMetrics.DISPATCHED), is(1L));
+        assertThat(snapshot.getCounter(SyncMetrics.QUEUE_DEPTH), is(0L));
+        assertThat(snapshot.getGauges().get(SyncMetrics.COMPACTION_RATIO), is(0.75));
+        assertThat(snapshot.getCounter(SyncMetrics.REFRESH_CHANGED), is(1L));
+        assertThat(snapshot.getCounter(SyncMetrics.REFRESH_UNCHANGED), is(1L));
+        assertThat(snapshot.getHistogram(SyncMetrics.OPERATION + "add").getCount(), is(1L));
+        assertThat(snapshot.getHistogram(SyncMetrics.CYCLE).getCount(), is(2L));
+    }
+
+    @Test
+    public void testRetriesFailedOperationWithoutLosingIt() throws Exception {
+        ListSyncer syncer = new ListSyncer(repository, SyncConfiguration.builder()
+                .retryBackoff(0, 0, TimeUnit.MILLISECONDS).build());
+        final CheckItem foo = new CheckItem("foo");
+        syncer.add(foo);
+
+        context.checking(new Expectations(){{
+            exactly(2).of(repository).add(foo);
+            will(onConsecutiveCalls(throwException(new IOException("timed out")), doAll()));
+            allowing(repository).getContent();
+            will(returnValue(new ArrayList<>()));
+        }});
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(1));
+        assertThat(syncer.getLocal(), contains(foo));
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(0));
+    }
+
+    @Test
+    public void testRetriesOperationThatFailedUnexpectedly() throws Exception {
+        ListSyncer syncer = new ListSyncer(repository, SyncConfiguration.builder()
+                .retryBackoff(0, 0, TimeUnit.MILLISECONDS).build());
+        final CheckItem foo = new CheckItem("foo");
+        syncer.add(foo);
+
+        context.checking(new Expectations(){{
+            exactly(2).of(repository).add(foo);
+            will(onConsecutiveCalls(throwException(new IllegalStateException("broken")), doAll()));
+            allowing(repository).getContent();
+            will(returnValue(new ArrayList<>()));
+        }});
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(1));
+        assertThat(syncer.getLocal(), contains(foo));
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(0));
+    }
+
+    @Test
+    public void testWaitsForBackoffBeforeRetrying() throws Exception {
+        ListSyncer syncer = new ListSyncer(repository, SyncConfiguration.builder()
+                .retryBackoff(1, 1, TimeUnit.HOURS).build());
+        final CheckItem foo = new CheckItem("foo");
+        syncer.add(foo);
+
+        context.checking(new Expectations(){{
+            oneOf(repository).add(foo);
+            will(throwException(new RemoteStatusException("PUT foo", 503)));
+            allowing(repository).getContent();
+            will(returnValue(new ArrayList<>()));
+        }});
+        syncer.run();
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(1));
+    }
+
+    @Test
+    public void testDropsOperationTheServerRefuses() throws Exception {
+        final CheckItem foo = new CheckItem("foo");
+        listSyncer.add(foo);
+
+        context.checking(new Expectations(){{
+            oneOf(repository).add(foo);
+            will(throwException(new RemoteStatusException("PUT foo", 403)));
+            allowing(repository).getContent();
+            will(returnValue(new ArrayList<>()));
+        }});
+        listSyncer.run();
+        assertThat(listSyncer.getPendingOperations(), is(0));
+        assertThat(listSyncer.getLocal().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRevertsRefusedOperationEvenIfRemoteReportsNoChange() throws Exception {
+        final ConditionalListRepository conditional = context.mock(ConditionalListRepository.class);
+        final CheckItem foo = new CheckItem("foo");
+        ListSyncer syncer = new ListSyncer(conditional);
+        syncer.add(foo);
+
+        context.checking(new Expectations(){{
+            oneOf(conditional).add(foo);
+            will(throwException(new RemoteStatusException("PUT foo", 403)));
+            allowing(conditional).hasChanged();
+            will(returnValue(false));
+            oneOf(conditional).getContent();
+            will(returnValue(new ArrayList<>()));
+        }});
+        syncer.run();
+        syncer.run();
+        assertThat(syncer.getLocal().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testQueuesAbandonedOperationsAgainWhenInterrupted() throws Exception {
+        final CompletableFuture<Void> request = new CompletableFuture<>();
+        final CountDownLatch sent = new CountDownLatch(1);
+        final ListSyncer syncer = new ListSyncer(new AsyncListRepository() {
+            @Override
+            public CompletableFuture<List<CheckItem>> getContent() {
+                return CompletableFuture.completedFuture((List<CheckItem>) new ArrayList<CheckItem>());
+            }
+
+            @Override
+            public CompletableFuture<Void> remove(CheckItem item) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> add(CheckItem item) {
+                sent.countDown();
+                return request;
+            }
+
+            @Override
+            public CompletableFuture<Void> toggle(CheckItem item) {
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+        syncer.add(new CheckItem("foo"));
+        Thread thread = new Thread(syncer);
+        thread.start();
+        assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+        thread.interrupt();
+        thread.join(5000);
+
+        assertThat(request.isCancelled(), is(true));
+        assertThat(syncer.getPendingOperations(), is(1));
+        assertThat(syncer.getLocal(), contains(new CheckItem("foo")));
+    }
+
+    @Test
+    public void testKeepsManyOperationsInFlightOnAnAsyncRemote() throws Exception {
+        final int items = 50;
+        final List<CompletableFuture<Void>> inFlight = Collections.synchronizedList(new ArrayList<CompletableFuture<Void>>());
+        final List<CheckItem> added = Collections.synchronizedList(new ArrayList<CheckItem>());
+        ListSyncer syncer = new ListSyncer(new AsyncListRepository() {
+            @Override
+            public CompletableFuture<List<CheckItem>> getContent() {
+                return CompletableFuture.completedFuture((List<CheckItem>) new ArrayList<>(added));
+            }
+
+            @Override
+            public CompletableFuture<Void> remove(CheckItem item) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> add(CheckItem item) {
+                CompletableFuture<Void> result = new CompletableFuture<>();
+                added.add(item);
+                inFlight.add(result);
+                if (inFlight.size() == items) {
+                    // only completes once every request was sent without waiting for another
+                    new Thread(() -> {
+                        for (CompletableFuture<Void> future : inFlight) {
+                            future.complete(null);
+                        }
+                    }).start();
+                }
+                return result;
+            }
+
+            @Override
+            public CompletableFuture<Void> toggle(CheckItem item) {
+                CompletableFuture<Void> result = new CompletableFuture<>();
+                result.completeExceptionally(new IOException("offline"));
+                return result;
+            }
+        });
+        for (int i = 0; i < items; i++) {
+            syncer.add(new CheckItem("item" + i));
+        }
+
+        syncer.run();
+
+        assertThat(syncer.getPendingOperations(), is(0));
+        assertThat(syncer.getLocal().size(), is(items));
+        syncer.toggle(new CheckItem("item0"));
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(1));
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LocalReplicaTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final JUnitRuleMockery context = new JUnitRuleMockery(){{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    private final CheckItem foo = new CheckItem("foo");
+    private final CheckItem bar = new CheckItem("bar");
+    private final CheckItem baz = new CheckItem("baz");
+
+    @Test
+    public void testEmptyReplicaLoadsEmptyList() throws Exception {
+        LocalReplica replica = LocalReplica.open(temporaryFolder.getRoot());
+        assertThat(replica.load(), is(empty()));
+        replica.close();
+    }
+
+    @Test
+    public void testLoadsSnapshotAndLaterChanges() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        LocalReplica replica = LocalReplica.open(directory);
+        replica.load();
+        replica.added(foo);
+        replica.added(bar);
+        long generation = replica.rotate();
+        replica.removed(foo);
+        replica.added(baz);
+        replica.writeSnapshot(generation, Arrays.asList(foo, bar));
+        replica.close();
+
+        replica = LocalReplica.open(directory);
+        assertThat(replica.load(), contains(bar, baz));
+        replica.close();
+    }
+
+    @Test
+    public void testChangesBeforeUnfinishedSnapshotAreKept() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        LocalReplica replica = LocalReplica.open(directory);
+        replica.load();
+        replica.added(foo);
+        replica.rotate();
+        replica.added(bar);
+        replica.close();
+
+        replica = LocalReplica.open(directory);
+        assertThat(replica.load(), contains(foo, bar));
+        replica.close();
+    }
+
+    @Test
+    public void testIgnoresSnapshotWithCorruptItemCount() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        LocalReplica replica = LocalReplica.open(directory);
+        replica.load();
+        replica.added(foo);
+        long generation = replica.rotate();
+        replica.added(bar);
+        replica.writeSnapshot(generation, Arrays.asList(foo));
+        replica.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, LocalReplica.SNAPSHOT_FILE), "rw")) {
+            // after the magic number and the generation
+            file.seek(12);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        replica = LocalReplica.open(directory);
+        assertThat(replica.load(), contains(bar));
+        replica.close();
+    }
+
+    @Test
+    public void testListSyncerStartsWithReplicaContent() throws Exception {
+        final ListRepository repository = context.mock(ListRepository.class);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SyncConfiguration config = SyncConfiguration.builder()
+                .operationExecutor(executor)
+                .replicaDirectory(temporaryFolder.getRoot())
+                .build();
+        context.checking(new Expectations(){{
+            allowing(repository).getContent();
+            will(returnValue(Arrays.asList(foo, bar)));
+        }});
+        ListSyncer first = new ListSyncer(repository, config);
+        first.run();
+        first.toggle(bar);
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        first.close();
+
+        ListSyncer restarted = new ListSyncer(repository, SyncConfiguration.builder()
+                .replicaDirectory(temporaryFolder.getRoot())
+                .build());
+        restarted.loadReplica();
+        assertThat(restarted.getLocal(), contains(foo, bar.toggleChecked()));
+        restarted.close();
+    }
+
+    @Test
+    public void testListSyncerLoadsReplicaOnFirstSync() throws Exception {
+        LocalReplica replica = LocalReplica.open(temporaryFolder.getRoot());
+        replica.load();
+        replica.added(foo);
+        replica.close();
+        final ListRepository repository = context.mock(ListRepository.class);
+        context.checking(new Expectations(){{
+            oneOf(repository).getContent();
+            will(throwException(new IOException("offline")));
+        }});
+        ListSyncer syncer = new ListSyncer(Arrays.asList(bar), repository, SyncConfiguration.builder()
+                .replicaDirectory(temporaryFolder.getRoot())
+                .build());
+        assertThat(syncer.getLocal(), contains(bar));
+
+        syncer.run();
+        assertThat(syncer.getLocal(), contains(foo, bar));
+        syncer.close();
+    }
+
+}
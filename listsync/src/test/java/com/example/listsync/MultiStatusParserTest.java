@@ -0,0 +1,97 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MultiStatusParserTest {
+
+    private static final String MULTISTATUS = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<d:multistatus xmlns:d=\"DAV:\" xmlns:cs=\"http://calendarserver.org/ns/\">\n"
+            + "  <d:response>\n"
+            + "    <d:href>/lists/shopping/</d:href>\n"
+            + "    <d:propstat>\n"
+            + "      <d:prop><d:resourcetype><d:collection/></d:resourcetype><cs:getctag>ctag-1</cs:getctag>"
+            + "<d:getetag>\"etag-1\"</d:getetag></d:prop>\n"
+            + "      <d:status>HTTP/1.1 200 OK</d:status>\n"
+            + "    </d:propstat>\n"
+            + "  </d:response>\n"
+            + "  <d:response>\n"
+            + "    <d:href>/lists/shopping/%5B_%5D%20milk</d:href>\n"
+            + "    <d:propstat>\n"
+            + "      <d:prop><d:getlastmodified>Sun, 06 Nov 1994 08:49:37 GMT</d:getlastmodified>"
+            + "<d:getetag>\"etag-2\"</d:getetag><d:resourcetype/></d:prop>\n"
+            + "      <d:status>HTTP/1.1 200 OK</d:status>\n"
+            + "    </d:propstat>\n"
+            + "    <d:propstat>\n"
+            + "      <d:prop><cs:getctag>not-found</cs:getctag></d:prop>\n"
+            + "      <d:status>HTTP/1.1 404 Not Found</d:status>\n"
+            + "    </d:propstat>\n"
+            + "  </d:response>\n"
+            + "</d:multistatus>\n";
+
+    @Test
+    public void testParsesResponsesWithTheirProperties() throws Exception {
+        List<MultiStatusParser.Response> responses = parse(MULTISTATUS);
+        assertThat(responses, hasSize(2));
+
+        MultiStatusParser.Response collection = responses.get(0);
+        assertThat(collection.getHref(), is("/lists/shopping/"));
+        assertThat(collection.isCollection(), is(true));
+        assertThat(collection.getChangeTag(), is("ctag-1"));
+
+        MultiStatusParser.Response item = responses.get(1);
+        assertThat(item.getHref(), is("/lists/shopping/%5B_%5D%20milk"));
+        assertThat(item.isCollection(), is(false));
+        assertThat(item.getLastModified(), is("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertThat(item.getChangeTag(), is("\"etag-2\""));
+    }
+
+    @Test
+    public void testIgnoresPropertiesWithoutStatus200() throws Exception {
+        String body = MULTISTATUS.replace("HTTP/1.1 200 OK", "HTTP/1.1 403 Forbidden");
+        MultiStatusParser.Response item = parse(body).get(1);
+        assertThat(item.getLastModified(), is(nullValue()));
+        assertThat(item.getChangeTag(), is(nullValue()));
+    }
+
+    private static List<MultiStatusParser.Response> parse(String body) throws IOException {
+        final List<MultiStatusParser.Response> responses = new ArrayList<>();
+        MultiStatusParser.parse(new ByteArrayInputStream(body.getBytes(Charsets.UTF_8)), new Consumer<MultiStatusParser.Response>() {
+            @Override
+            public void consume(MultiStatusParser.Response value) {
+                responses.add(value);
+            }
+        });
+        return responses;
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasToString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OperationJournalTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final JUnitRuleMockery context = new JUnitRuleMockery(){{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    @Test
+    public void testReplaysAppendedEntries() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        OperationJournal journal = OperationJournal.open(directory);
+        journal.replay();
+        journal.append(OperationJournal.Type.ADD, new CheckItem("foo"));
+        journal.append(OperationJournal.Type.TOGGLE, new CheckItem("bär", true));
+        journal.close();
+
+        List<OperationJournal.Entry> entries = OperationJournal.open(directory).replay();
+        assertThat(entries, contains(hasToString("ADD [_] foo"), hasToString("TOGGLE [✔] bär")));
+    }
+
+    @Test
+    public void testRewriteKeepsOnlyGivenEntries() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        OperationJournal journal = OperationJournal.open(directory);
+        journal.replay();
+        journal.append(OperationJournal.Type.ADD, new CheckItem("foo"));
+        journal.append(OperationJournal.Type.ADD, new CheckItem("bar"));
+        journal.rewrite(Arrays.asList(new OperationJournal.Entry(OperationJournal.Type.ADD, new CheckItem("bar"))));
+        journal.append(OperationJournal.Type.REMOVE, new CheckItem("baz"));
+        journal.close();
+
+        List<OperationJournal.Entry> entries = OperationJournal.open(directory).replay();
+        assertThat(entries, contains(hasToString("ADD [_] bar"), hasToString("REMOVE [_] baz")));
+    }
+
+    @Test
+    public void testIgnoresTornTail() throws Exception {
+        File directory = temporaryFolder.getRoot();
+        OperationJournal journal = OperationJournal.open(directory);
+        journal.replay();
+        journal.append(OperationJournal.Type.ADD, new CheckItem("foo"));
+        journal.append(OperationJournal.Type.ADD, new CheckItem("bar"));
+        journal.close();
+        File file = new File(directory, OperationJournal.FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        journal = OperationJournal.open(directory);
+        assertThat(journal.replay(), contains(hasToString("ADD [_] foo")));
+        journal.append(OperationJournal.Type.ADD, new CheckItem("baz"));
+        journal.close();
+        assertThat(OperationJournal.open(directory).replay(), contains(hasToString("ADD [_] foo"), hasToString("ADD [_] baz")));
+    }
+
+    @Test
+    public void testListSyncerRecoversPendingOperations() throws Exception {
+        final ListRepository repository = context.mock(ListRepository.class);
+        SyncConfiguration config = SyncConfiguration.builder()
+                .journalDirectory(temporaryFolder.getRoot())
+                .build();
+        final CheckItem foo = new CheckItem("foo");
+        ListSyncer killed = new ListSyncer(repository, config);
+        killed.add(foo);
+        killed.add(new CheckItem("bar"));
+        killed.remove(new CheckItem("bar"));
+
+        ListSyncer restarted = new ListSyncer(repository, config);
+        assertThat(restarted.getLocal(), contains(foo));
+        context.checking(new Expectations(){{
+            oneOf(repository).add(foo);
+            allowing(repository).getContent();
+            will(returnValue(Collections.singletonList(foo)));
+        }});
+        restarted.run();
+        restarted.close();
+
+        OperationJournal journal = OperationJournal.open(temporaryFolder.getRoot());
+        assertThat(journal.replay(), is(empty()));
+    }
+
+    @Test
+    public void testListSyncerCloseWaitsForRunningSyncAndIgnoresLaterChanges() throws Exception {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CheckItem foo = new CheckItem("foo");
+        final ListSyncer syncer = new ListSyncer(new ListRepository() {
+            @Override
+            public List<CheckItem> getContent() throws IOException {
+                fetching.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return Collections.singletonList(foo);
+            }
+
+            @Override
+            public void add(CheckItem item) {
+            }
+
+            @Override
+            public void remove(CheckItem item) {
+            }
+
+            @Override
+            public void toggle(CheckItem item) {
+            }
+        }, SyncConfiguration.builder().journalDirectory(temporaryFolder.getRoot()).build());
+        final List<Exception> exceptions = new CopyOnWriteArrayList<>();
+        syncer.registerExceptionHandler(new Consumer<Exception>() {
+            @Override
+            public void consume(Exception e) {
+                exceptions.add(e);
+            }
+        });
+        syncer.add(foo);
+        Thread sync = new Thread(syncer);
+        sync.start();
+        assertThat(fetching.await(5, TimeUnit.SECONDS), is(true));
+
+        Thread close = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                syncer.close();
+            }
+        });
+        close.start();
+        close.join(100);
+        assertThat(close.isAlive(), is(true));
+        syncer.add(new CheckItem("bar"));
+        release.countDown();
+        close.join(5000);
+        sync.join(5000);
+
+        assertThat(close.isAlive(), is(false));
+        assertThat(exceptions, is(empty()));
+        assertThat(syncer.getLocal(), contains(foo));
+        assertThat(OperationJournal.open(temporaryFolder.getRoot()).replay(), is(empty()));
+    }
+
+}
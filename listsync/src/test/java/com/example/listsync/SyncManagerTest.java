@@ -0,0 +1,201 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.google.common.collect.ImmutableMap;
+import org.jmock.Expectations;
+import org.jmock.States;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class SyncManagerTest {
+
+    private final Synchroniser synchroniser = new Synchroniser();
+
+    @Rule
+    public final JUnitRuleMockery context = new JUnitRuleMockery(){{
+        setThreadingPolicy(synchroniser);
+    }};
+
+    private ConditionalRepository<?> repository;
+    private ListRepository listA;
+    private ListRepository listB;
+    private SyncManager syncManager;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = context.mock(ConditionalRepository.class);
+        listA = context.mock(ListRepository.class, "a");
+        listB = context.mock(ListRepository.class, "b");
+        context.checking(new Expectations(){{
+            allowing(repository).getList("a");
+            will(returnValue(listA));
+            allowing(repository).getList("b");
+            will(returnValue(listB));
+        }});
+        syncManager = new SyncManager(repository, SyncConfiguration.builder()
+                .coldRefreshInterval(1, TimeUnit.HOURS)
+                .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        syncManager.close();
+    }
+
+    @Test
+    public void testRefreshesOnlyChangedLists() throws Exception {
+        syncManager.setPriority("a", SyncManager.Priority.HOT);
+        syncManager.setPriority("b", SyncManager.Priority.HOT);
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "1", "b", "1")));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.emptyList()));
+            oneOf(listB).getContent();
+            will(returnValue(Collections.emptyList()));
+        }});
+        assertThat(syncManager.scan(), containsInAnyOrder("a", "b"));
+
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "2", "b", "1")));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.singletonList(new CheckItem("foo"))));
+        }});
+        assertThat(syncManager.scan(), contains("a"));
+        assertThat(syncManager.getSyncer("a").getLocal(), contains(new CheckItem("foo")));
+    }
+
+    @Test
+    public void testDefersColdLists() throws Exception {
+        syncManager.setForeground("a");
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "1", "b", "1")));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.emptyList()));
+            oneOf(listB).getContent();
+            will(returnValue(Collections.emptyList()));
+        }});
+        assertThat(syncManager.scan(), containsInAnyOrder("a", "b"));
+
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "2", "b", "2")));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.emptyList()));
+        }});
+        assertThat(syncManager.scan(), contains("a"));
+
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "2", "b", "2")));
+        }});
+        assertThat(syncManager.scan(), empty());
+    }
+
+    @Test
+    public void testRefreshesAgainAfterAFailedRefresh() throws Exception {
+        syncManager.setPriority("a", SyncManager.Priority.HOT);
+        context.checking(new Expectations(){{
+            exactly(2).of(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "1")));
+            oneOf(listA).getContent();
+            will(throwException(new IOException("offline")));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.singletonList(new CheckItem("foo"))));
+        }});
+        assertThat(syncManager.scan(), contains("a"));
+        assertThat(syncManager.scan(), contains("a"));
+        assertThat(syncManager.getSyncer("a").getLocal(), contains(new CheckItem("foo")));
+    }
+
+    @Test
+    public void testRefreshesAgainAfterARefreshThrew() throws Exception {
+        syncManager.setPriority("a", SyncManager.Priority.HOT);
+        syncManager.setPriority("b", SyncManager.Priority.HOT);
+        context.checking(new Expectations(){{
+            exactly(2).of(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "1", "b", "1")));
+            oneOf(listA).getContent();
+            will(throwException(new IllegalStateException("broken")));
+            oneOf(listB).getContent();
+            will(returnValue(Collections.emptyList()));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.singletonList(new CheckItem("foo"))));
+        }});
+        assertThat(syncManager.scan(), containsInAnyOrder("a", "b"));
+        assertThat(syncManager.scan(), contains("a"));
+        assertThat(syncManager.getSyncer("a").getLocal(), contains(new CheckItem("foo")));
+    }
+
+    @Test
+    public void testKeepsScanningAfterAScanThrew() throws Exception {
+        final States scans = context.states("scans").startsAs("none");
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(throwException(new IllegalStateException("broken")));
+            then(scans.is("failed"));
+            atLeast(1).of(repository).getListTags();
+            when(scans.isNot("none"));
+            will(returnValue(Collections.emptyMap()));
+            then(scans.is("done"));
+        }});
+        syncManager.start(10, TimeUnit.MILLISECONDS);
+        synchroniser.waitUntil(scans.is("done"), 5000);
+        syncManager.stop();
+    }
+
+    @Test
+    public void testDropsListsDeletedRemotely() throws Exception {
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "1", "b", "1")));
+            oneOf(listA).getContent();
+            will(returnValue(Collections.emptyList()));
+            oneOf(listB).getContent();
+            will(returnValue(Collections.emptyList()));
+        }});
+        assertThat(syncManager.scan(), containsInAnyOrder("a", "b"));
+
+        context.checking(new Expectations(){{
+            oneOf(repository).getListTags();
+            will(returnValue(ImmutableMap.of("a", "1")));
+            never(listB).getContent();
+        }});
+        assertThat(syncManager.scan(), empty());
+        assertThat(syncManager.getListNames(), contains("a"));
+    }
+
+}
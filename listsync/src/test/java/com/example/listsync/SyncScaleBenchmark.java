@@ -0,0 +1,263 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync;
+
+import com.example.listsync.webdav.EmbeddedWebDavServer;
+import com.example.listsync.webdav.NetworkConditionsHandler;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End-to-end sync of a WebDAV list against {@link EmbeddedWebDavServer} under simulated network
+ * conditions. For every list size it measures one sync cycle in these scenarios:
+ * <ul>
+ * <li>cold-load: the first sync of a pre-populated list</li>
+ * <li>idle-poll: a sync when nothing changed</li>
+ * <li>burst-edits: a sync after a few toggles</li>
+ * <li>backlog-flush: a sync after adds, removes and toggles made while offline</li>
+ * </ul>
+ * Each result is written as one JSON object per line, so runs of different versions can be
+ * compared. Not a test; run its main method, e.g. through the syncBenchmark gradle task.
+ * <p>
+ * Options: {@code --sizes 10,100,1000,10000 --latency <ms> --bandwidth <bytes/s> --burst <edits>
+ * --repetitions <n> --label <text> --output <file>}
+ */
+public class SyncScaleBenchmark {
+
+    private static final String WATCHPATH = "lists";
+    private static final String LIST = "benchmark";
+
+    private List<Integer> sizes = new ArrayList<>();
+    private long latencyMillis = 50;
+    private long bytesPerSecond = 1024 * 1024;
+    private int burst = 20;
+    private int repetitions = 3;
+    private String label = "";
+    private File output;
+
+    public static void main(String[] args) throws Exception {
+        SyncScaleBenchmark benchmark = new SyncScaleBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes":
+                    for (String size : value.split(",")) {
+                        sizes.add(Integer.parseInt(size.trim()));
+                    }
+                    break;
+                case "--latency":
+                    latencyMillis = Long.parseLong(value);
+                    break;
+                case "--bandwidth":
+                    bytesPerSecond = Long.parseLong(value);
+                    break;
+                case "--burst":
+                    burst = Integer.parseInt(value);
+                    break;
+                case "--repetitions":
+                    repetitions = Integer.parseInt(value);
+                    break;
+                case "--label":
+                    label = value;
+                    break;
+                case "--output":
+                    output = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (sizes.isEmpty()) {
+            Collections.addAll(sizes, 10, 100, 1000, 10000);
+        }
+    }
+
+    private void run() throws Exception {
+        PrintWriter results = null;
+        if (output != null) {
+            output.getAbsoluteFile().getParentFile().mkdirs();
+            results = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output, true), Charsets.UTF_8), true);
+        }
+        try {
+            for (int size : sizes) {
+                List<List<Measurement>> runs = new ArrayList<>();
+                for (int i = 0; i < repetitions; i++) {
+                    runs.add(runScenarios(size));
+                }
+                for (int scenario = 0; scenario < runs.get(0).size(); scenario++) {
+                    List<Measurement> measurements = new ArrayList<>();
+                    for (List<Measurement> run : runs) {
+                        measurements.add(run.get(scenario));
+                    }
+                    String line = toJson(size, measurements);
+                    System.out.println(line);
+                    if (results != null) {
+                        results.println(line);
+                    }
+                }
+            }
+        } finally {
+            if (results != null) {
+                results.close();
+            }
+        }
+    }
+
+    private List<Measurement> runScenarios(int size) throws Exception {
+        File root = Files.createTempDirectory("sync-benchmark").toFile();
+        populate(new File(new File(root, WATCHPATH), LIST), size);
+        try (EmbeddedWebDavServer server = new EmbeddedWebDavServer(root).start()) {
+            NetworkConditionsHandler network = server.getNetwork();
+            network.setConditions(latencyMillis, bytesPerSecond);
+            WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(),
+                    server.getLocalPort(), WATCHPATH, null, null, false);
+            WebDavRepository repository = new WebDavRepository(config);
+            ListSyncer syncer = new ListSyncer(repository.getList(LIST));
+            try {
+                List<Measurement> result = new ArrayList<>();
+
+                result.add(measure("cold-load", 0, syncer, network));
+                if (syncer.getLocal().size() != size) {
+                    throw new IllegalStateException("cold load got " + syncer.getLocal().size() + " of " + size + " items");
+                }
+
+                result.add(measure("idle-poll", 0, syncer, network));
+
+                List<CheckItem> items = syncer.getLocal();
+                int edits = Math.min(burst, size);
+                for (int i = 0; i < edits; i++) {
+                    syncer.toggle(items.get(i));
+                }
+                result.add(measure("burst-edits", edits, syncer, network));
+
+                items = syncer.getLocal();
+                int backlog = Math.max(edits, size / 10);
+                for (int i = 0; i < backlog; i++) {
+                    switch (i % 3) {
+                        case 0:
+                            syncer.add(new CheckItem("offline " + i));
+                            break;
+                        case 1:
+                            syncer.remove(items.get(items.size() - 1 - i / 3));
+                            break;
+                        default:
+                            syncer.toggle(items.get(i / 3));
+                            break;
+                    }
+                }
+                result.add(measure("backlog-flush", syncer.getPendingOperations(), syncer, network));
+                return result;
+            } finally {
+                syncer.close();
+                repository.close();
+            }
+        } finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    private static void populate(File listDirectory, int size) throws IOException {
+        if (!listDirectory.mkdirs()) {
+            throw new IOException("could not create " + listDirectory);
+        }
+        for (int i = 0; i < size; i++) {
+            if (!new File(listDirectory, new CheckItem("item " + i).toString()).createNewFile()) {
+                throw new IOException("could not create item " + i);
+            }
+        }
+    }
+
+    private static Measurement measure(String scenario, int operations, ListSyncer syncer,
+                                       NetworkConditionsHandler network) {
+        network.resetCounters();
+        long start = System.nanoTime();
+        syncer.sync(true);
+        long nanos = System.nanoTime() - start;
+        return new Measurement(scenario, operations, nanos,
+                network.getRequests(), network.getBytesIn(), network.getBytesOut());
+    }
+
+    private String toJson(int size, List<Measurement> measurements) {
+        List<Long> nanos = new ArrayList<>();
+        for (Measurement measurement : measurements) {
+            nanos.add(measurement.nanos);
+        }
+        Collections.sort(nanos);
+        Measurement last = measurements.get(measurements.size() - 1);
+        List<String> fields = new ArrayList<>();
+        fields.add("\"label\":\"" + label.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+        fields.add("\"timestamp\":" + System.currentTimeMillis());
+        fields.add("\"scenario\":\"" + last.scenario + "\"");
+        fields.add("\"items\":" + size);
+        fields.add("\"operations\":" + last.operations);
+        fields.add("\"latencyMillis\":" + latencyMillis);
+        fields.add("\"bytesPerSecond\":" + bytesPerSecond);
+        fields.add("\"repetitions\":" + measurements.size());
+        fields.add("\"minMillis\":" + millis(nanos.get(0)));
+        fields.add("\"medianMillis\":" + millis(nanos.get(nanos.size() / 2)));
+        fields.add("\"maxMillis\":" + millis(nanos.get(nanos.size() - 1)));
+        fields.add("\"requests\":" + last.requests);
+        fields.add("\"bytesIn\":" + last.bytesIn);
+        fields.add("\"bytesOut\":" + last.bytesOut);
+        return "{" + Joiner.on(",").join(fields) + "}";
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static class Measurement {
+        private final String scenario;
+        private final int operations;
+        private final long nanos;
+        private final long requests;
+        private final long bytesIn;
+        private final long bytesOut;
+
+        private Measurement(String scenario, int operations, long nanos, long requests, long bytesIn, long bytesOut) {
+            this.scenario = scenario;
+            this.operations = operations;
+            this.nanos = nanos;
+            this.requests = requests;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+        }
+    }
+
+}
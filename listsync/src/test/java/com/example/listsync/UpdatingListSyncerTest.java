@@ -21,6 +21,8 @@ package com.example.listsync;
 
 import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
+import org.jmock.lib.concurrent.DeterministicScheduler;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -32,11 +34,23 @@ import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.fail;
 
 public class UpdatingListSyncerTest {
@@ -70,6 +84,11 @@ public class UpdatingListSyncerTest {
         listSyncer.setUpdateTimeout(3, TimeUnit.SECONDS);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        listSyncer.close();
+    }
+
     @Ignore("somethings still wrong here")
     @Test
     public void testToggle4Times() throws Exception {
@@ -83,15 +102,27 @@ public class UpdatingListSyncerTest {
         listSyncer.toggle(foo.toggleChecked());
         repoWorkSemaphore.release(2);
         //repoWorkDoneSemaphore.acquire(2);
-        List<CheckItem> local = listSyncer.getLocal();
-        waitForAssertThat(local, contains(foo), 10);
+        waitForAssertThat(localList(), contains(foo), 10);
+    }
+
+    private Supplier<List<CheckItem>> localList() {
+        return new Supplier<List<CheckItem>>() {
+            @Override
+            public List<CheckItem> get() {
+                return listSyncer.getLocal();
+            }
+        };
     }
 
-    public <T> void waitForAssertThat(T actual, Matcher<T> matcher, long seconds) {
+    /**
+     * Asserts on a fresh value every time, since getLocal() returns a snapshot that does not
+     * change once the sync is done.
+     */
+    public <T> void waitForAssertThat(Supplier<T> actual, Matcher<? super T> matcher, long seconds) {
         long retries = seconds;
         while(retries > 0) {
             try {
-                assertThat(actual, matcher);
+                assertThat(actual.get(), matcher);
                 return;
             } catch (AssertionError e) {
                 try {
@@ -102,7 +133,7 @@ public class UpdatingListSyncerTest {
                 retries--;
             }
         }
-        assertThat("assertion did not become true after " + seconds + " seconds", actual, matcher);
+        assertThat("assertion did not become true after " + seconds + " seconds", actual.get(), matcher);
     }
 
     @Test
@@ -113,31 +144,214 @@ public class UpdatingListSyncerTest {
         listSyncer.toggle(foo.toggleChecked());
         listSyncer.toggle(foo);
         repoWorkSemaphore.release(2);
-        repoWorkDoneSemaphore.acquire(2);
-        List<CheckItem> local = listSyncer.getLocal();
-        waitForAssertThat(local, contains(foo.toggleChecked()), 10);
+        // the add is still pending, so all of it is merged into one remote add
+        repoWorkDoneSemaphore.acquire(1);
+        waitForAssertThat(localList(), contains(foo.toggleChecked()), 10);
+    }
+
+    @Test
+    public void testToggle3TimesAfterAddIsOneRemoteToggle() throws Exception {
+        CheckItem foo = new CheckItem("foo");
+        listSyncer.add(foo);
+        repoWorkSemaphore.release(1);
+        repoWorkDoneSemaphore.acquire(1);
+        // the add is done, so the three toggles are compacted into one remote toggle
+        listSyncer.toggle(foo);
+        listSyncer.toggle(foo.toggleChecked());
+        listSyncer.toggle(foo);
+        repoWorkSemaphore.release(1);
+        repoWorkDoneSemaphore.acquire(1);
+        waitForAssertThat(localList(), contains(foo.toggleChecked()), 10);
+        assertThat(listSyncer.getPendingOperations(), is(0));
+    }
+
+    @Test
+    public void testBacksOffWhileIdle() throws Exception {
+        assertThat(UpdatingListSyncer.nextDelay(10, false, 10, 300), is(20L));
+        assertThat(UpdatingListSyncer.nextDelay(160, false, 10, 300), is(300L));
+        assertThat(UpdatingListSyncer.nextDelay(300, false, 10, 300), is(300L));
+        assertThat(UpdatingListSyncer.nextDelay(300, true, 10, 300), is(10L));
+    }
+
+    @Test
+    public void testJitterStaysWithinBounds() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            assertThat(UpdatingListSyncer.withJitter(100, 10, 300, random),
+                    both(greaterThanOrEqualTo(80L)).and(lessThanOrEqualTo(120L)));
+            assertThat(UpdatingListSyncer.withJitter(300, 10, 300, random), lessThanOrEqualTo(300L));
+            assertThat(UpdatingListSyncer.withJitter(10, 10, 10, random), is(10L));
+        }
+    }
+
+    @Test
+    public void testBurstOfEditsIsSyncedInOneCycle() throws Exception {
+        final AtomicInteger refreshes = new AtomicInteger();
+        SimpleListRepository repository = new SimpleListRepository() {
+            @Override
+            public synchronized List<CheckItem> getContent() throws IOException {
+                refreshes.incrementAndGet();
+                return super.getContent();
+            }
+        };
+        ManualScheduler scheduler = new ManualScheduler();
+        UpdatingListSyncer syncer = new UpdatingListSyncer(repository);
+        syncer.setScheduler(scheduler);
+        syncer.setCoalescingWindow(200, TimeUnit.MILLISECONDS);
+        syncer.setUpdateTimeout(1, TimeUnit.HOURS);
+        scheduler.runUntilIdle();
+        assertThat(refreshes.get(), is(1));
+
+        for (int i = 0; i < 10; i++) {
+            syncer.add(new CheckItem("item" + i));
+            scheduler.tick(10, TimeUnit.MILLISECONDS);
+        }
+        assertThat(refreshes.get(), is(1));
+        scheduler.tick(100, TimeUnit.MILLISECONDS);
+        assertThat(refreshes.get(), is(2));
+        assertThat(repository.content.size(), is(10));
+
+        scheduler.tick(59, TimeUnit.MINUTES);
+        syncer.close();
+        assertThat(refreshes.get(), is(2));
+    }
+
+    @Test
+    public void testDoesNotScheduleAfterClose() throws Exception {
+        SimpleListRepository repository = new SimpleListRepository();
+        UpdatingListSyncer syncer = new UpdatingListSyncer(repository);
+        syncer.setCoalescingWindow(10, TimeUnit.MILLISECONDS);
+        syncer.setUpdateTimeout(1, TimeUnit.HOURS);
+        syncer.waitUntilDone();
+        syncer.close();
+
+        syncer.add(new CheckItem("foo"));
+        syncer.setUpdateTimeout(1, TimeUnit.SECONDS);
+        syncer.waitUntilDone();
+        Thread.sleep(200);
+
+        assertThat(syncer.getPendingOperations(), is(0));
+        assertThat(syncer.getLocal().isEmpty(), is(true));
+        assertThat(repository.content.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFallsBackToPlatformThreadsWithoutVirtualThreadSupport() throws Exception {
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        final Semaphore added = new Semaphore(0);
+        SimpleListRepository repository = new SimpleListRepository() {
+            @Override
+            public synchronized void add(CheckItem item) throws IOException {
+                threads.add(Thread.currentThread().getName());
+                super.add(item);
+                added.release();
+            }
+        };
+        SyncConfiguration config = SyncConfiguration.builder().virtualThreads(true).build();
+        UpdatingListSyncer syncer = new UpdatingListSyncer(repository, config);
+        syncer.add(new CheckItem("foo"));
+        syncer.setUpdateTimeout(1, TimeUnit.HOURS);
+        assertThat(added.tryAcquire(10, TimeUnit.SECONDS), is(true));
+        syncer.close();
+        assertThat(config.usesVirtualThreads(), is(VirtualThreads.isAvailable()));
+        assertThat(threads.get(0), Matchers.startsWith(config.usesVirtualThreads() ? "listsync-vt-" : "listsync-op-"));
+    }
+
+    @Test
+    public void testVirtualThreadExecutorRunsTasksOnEveryRuntime() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("test-vt-");
+        try {
+            String name = executor.submit(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS);
+            assertThat(name, Matchers.startsWith("test-vt-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A {@link DeterministicScheduler} whose futures know their delay, which the coalescing window
+     * is based on.
+     */
+    private static class ManualScheduler extends DeterministicScheduler {
+        private long now;
+
+        @Override
+        public void tick(long duration, TimeUnit timeUnit) {
+            now += timeUnit.toNanos(duration);
+            super.tick(duration, timeUnit);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit timeUnit) {
+            final ScheduledFuture<?> task = super.schedule(command, delay, timeUnit);
+            final long due = now + timeUnit.toNanos(delay);
+            return new ForwardingScheduledFuture(task) {
+                @Override
+                public long getDelay(TimeUnit unit) {
+                    return unit.convert(due - now, TimeUnit.NANOSECONDS);
+                }
+            };
+        }
+    }
+
+    private abstract static class ForwardingScheduledFuture implements ScheduledFuture<Object> {
+        private final ScheduledFuture<?> delegate;
+
+        ForwardingScheduledFuture(ScheduledFuture<?> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return delegate.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return delegate.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.get(timeout, unit);
+        }
     }
 
     private class SimpleListRepository implements ListRepository {
         private List<CheckItem> content = new ArrayList<>();
 
         @Override
-        public List<CheckItem> getContent() throws IOException {
-            return Collections.unmodifiableList(content);
+        public synchronized List<CheckItem> getContent() throws IOException {
+            return Collections.unmodifiableList(new ArrayList<>(content));
         }
 
         @Override
-        public void remove(CheckItem item) throws IOException {
+        public synchronized void remove(CheckItem item) throws IOException {
             content.remove(item);
         }
 
         @Override
-        public void add(CheckItem item) throws IOException {
+        public synchronized void add(CheckItem item) throws IOException {
             content.add(item);
         }
 
         @Override
-        public void toggle(CheckItem item) throws IOException {
+        public synchronized void toggle(CheckItem item) throws IOException {
             int i = content.indexOf(item);
             content.set(i, item.toggleChecked());
         }
@@ -0,0 +1,200 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.listsync;
+
+import com.example.listsync.metrics.MetricsRegistry;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many lists one process can keep in sync at the same time, with the shared platform thread
+ * pools and with virtual threads. For every number of lists it starts an {@link UpdatingListSyncer}
+ * per list against an {@link InMemoryRepository} with a fixed latency, queues a few adds on each
+ * and measures the time until every list reached remote, along with the peak number of platform
+ * threads. Virtual threads need Java 21; on older runtimes only the platform mode is measured.
+ * Each result is written as one JSON object per line. Not a test; run its main method, e.g.
+ * through the capacityBenchmark gradle task.
+ * <p>
+ * Options: {@code --lists 100,1000,10000 --items <adds per list> --latency <ms>
+ * --modes platform,virtual --label <text> --output <file>}
+ */
+public class VirtualThreadCapacityBenchmark {
+
+    private static final long TIMEOUT = TimeUnit.MINUTES.toNanos(10);
+
+    private List<Integer> listCounts = new ArrayList<>();
+    private int items = 5;
+    private long latencyMillis = 50;
+    private List<String> modes = new ArrayList<>();
+    private String label = "";
+    private File output;
+
+    public static void main(String[] args) throws Exception {
+        VirtualThreadCapacityBenchmark benchmark = new VirtualThreadCapacityBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--lists":
+                    for (String count : value.split(",")) {
+                        listCounts.add(Integer.parseInt(count.trim()));
+                    }
+                    break;
+                case "--items":
+                    items = Integer.parseInt(value);
+                    break;
+                case "--latency":
+                    latencyMillis = Long.parseLong(value);
+                    break;
+                case "--modes":
+                    for (String mode : value.split(",")) {
+                        modes.add(mode.trim());
+                    }
+                    break;
+                case "--label":
+                    label = value;
+                    break;
+                case "--output":
+                    output = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (listCounts.isEmpty()) {
+            Collections.addAll(listCounts, 100, 1000);
+        }
+        if (modes.isEmpty()) {
+            Collections.addAll(modes, "platform", "virtual");
+        }
+    }
+
+    private void run() throws Exception {
+        PrintWriter results = null;
+        if (output != null) {
+            output.getAbsoluteFile().getParentFile().mkdirs();
+            results = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output, true), Charsets.UTF_8), true);
+        }
+        try {
+            for (int lists : listCounts) {
+                for (String mode : modes) {
+                    boolean virtual = "virtual".equals(mode);
+                    if (virtual && !VirtualThreads.isAvailable()) {
+                        System.err.println("virtual threads need Java 21 or later, skipping mode " + mode);
+                        continue;
+                    }
+                    String line = toJson(mode, lists, measure(lists, virtual));
+                    System.out.println(line);
+                    if (results != null) {
+                        results.println(line);
+                    }
+                }
+            }
+        } finally {
+            if (results != null) {
+                results.close();
+            }
+        }
+    }
+
+    private Measurement measure(int lists, boolean virtual) throws Exception {
+        InMemoryRepository repository = InMemoryRepository.builder()
+                .latency(InMemoryRepository.Latency.constant(latencyMillis, TimeUnit.MILLISECONDS))
+                .build();
+        SyncConfiguration config = SyncConfiguration.builder()
+                .virtualThreads(virtual)
+                .metrics(new MetricsRegistry())
+                .build();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        List<UpdatingListSyncer> syncers = new ArrayList<>(lists);
+        long start = System.nanoTime();
+        for (int i = 0; i < lists; i++) {
+            UpdatingListSyncer syncer = new UpdatingListSyncer(repository.getList("list" + i), config);
+            for (int j = 0; j < items; j++) {
+                syncer.add(new CheckItem("item " + j));
+            }
+            syncer.setUpdateTimeout(1, TimeUnit.HOURS);
+            syncers.add(syncer);
+        }
+        int synced = 0;
+        while (synced < lists) {
+            if (System.nanoTime() - start > TIMEOUT) {
+                throw new IllegalStateException("only " + synced + " of " + lists + " lists synced in time");
+            }
+            while (synced < lists && repository.getStoredContent("list" + synced).size() == items) {
+                synced++;
+            }
+            Thread.sleep(1);
+        }
+        long nanos = System.nanoTime() - start;
+        int peakThreads = threads.getPeakThreadCount();
+        for (UpdatingListSyncer syncer : syncers) {
+            syncer.close();
+        }
+        repository.close();
+        return new Measurement(nanos, peakThreads, repository.getRequestCount());
+    }
+
+    private String toJson(String mode, int lists, Measurement measurement) {
+        List<String> fields = new ArrayList<>();
+        fields.add("\"label\":\"" + label.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+        fields.add("\"timestamp\":" + System.currentTimeMillis());
+        fields.add("\"javaVersion\":\"" + System.getProperty("java.version") + "\"");
+        fields.add("\"mode\":\"" + mode + "\"");
+        fields.add("\"lists\":" + lists);
+        fields.add("\"itemsPerList\":" + items);
+        fields.add("\"latencyMillis\":" + latencyMillis);
+        fields.add("\"millis\":" + String.format(Locale.ROOT, "%.3f", measurement.nanos / 1e6));
+        fields.add("\"listsPerSecond\":" + String.format(Locale.ROOT, "%.1f", lists / (measurement.nanos / 1e9)));
+        fields.add("\"peakPlatformThreads\":" + measurement.peakThreads);
+        fields.add("\"requests\":" + measurement.requests);
+        return "{" + Joiner.on(",").join(fields) + "}";
+    }
+
+    private static class Measurement {
+        private final long nanos;
+        private final int peakThreads;
+        private final long requests;
+
+        private Measurement(long nanos, int peakThreads, long requests) {
+            this.nanos = nanos;
+            this.peakThreads = peakThreads;
+            this.requests = requests;
+        }
+    }
+
+}
@@ -19,6 +19,8 @@
 
 package com.example.listsync;
 
+import com.example.listsync.metrics.MetricsRegistry;
+import com.example.listsync.metrics.MetricsSnapshot;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -26,7 +28,12 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
@@ -45,4 +52,201 @@ public class WebDAVIT extends WebDavServerTest {
         assertThat(content, contains(is(new CheckItem("asdf"))));
     }
 
+    @Test
+    public void testListsCollectionsOnly() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        Repository client1 = new WebDavRepository(config);
+        client1.getList("foo").add(new CheckItem("asdf"));
+        client1.getList("bar").add(new CheckItem("qwer"));
+        List<String> lists = client1.getLists();
+        assertThat(lists, containsInAnyOrder("foo", "bar"));
+    }
+
+    @Test
+    public void testListTagsCoverAllLists() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        WebDavRepository client1 = new WebDavRepository(config);
+        client1.getList("foo").add(new CheckItem("asdf"));
+        client1.getList("bar").add(new CheckItem("qwer"));
+        assertThat(client1.getListTags().keySet(), containsInAnyOrder("foo", "bar"));
+        client1.close();
+    }
+
+    @Test
+    public void testScanOfMissingWatchPathDoesNotCreateIt() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "missing", null, null, false);
+        WebDavRepository client1 = new WebDavRepository(config);
+        server.getNetwork().resetCounters();
+        assertThat(client1.getListTags().isEmpty(), is(true));
+        assertThat(client1.getListTags().isEmpty(), is(true));
+        // one PROPFIND each, no MKCOL
+        assertThat(server.getNetwork().getRequests(), is(2L));
+        client1.close();
+    }
+
+    @Test
+    public void testRepositoryIsSharedAcrossThreads() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        final WebDavRepository client1 = new WebDavRepository(config);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<CheckItem>>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final String listName = "list" + i;
+            results.add(executor.submit(() -> {
+                ListRepository list = client1.getList(listName);
+                for (int j = 0; j < 5; j++) {
+                    list.add(new CheckItem(listName + "-" + j));
+                }
+                return list.getContent();
+            }));
+        }
+        for (Future<List<CheckItem>> result : results) {
+            assertThat(result.get(30, TimeUnit.SECONDS).size(), is(5));
+        }
+        executor.shutdown();
+        client1.close();
+    }
+
+    @Test
+    public void testTogglesWithMoveOnly() throws Exception {
+        WebDavConfiguration config = WebDavConfiguration.builder(InetAddress.getLocalHost().getHostAddress(), "")
+                .customPort(localPort)
+                .toggleStrategy(WebDavConfiguration.ToggleStrategy.MOVE)
+                .build();
+        WebDavRepository client1 = new WebDavRepository(config);
+        ListRepository list = client1.getList("toggled");
+        list.add(new CheckItem("a"));
+        // lastmodified has a resolution of a second
+        Thread.sleep(1100);
+        list.add(new CheckItem("b"));
+        list.toggle(new CheckItem("a"));
+        assertThat(list.getContent(), contains(new CheckItem("b"), new CheckItem("a", true)));
+        list.toggle(new CheckItem("a", true));
+        // a keeps the lastmodified of its add, so it is back in front of b
+        assertThat(list.getContent(), contains(new CheckItem("a"), new CheckItem("b")));
+        client1.close();
+    }
+
+    @Test
+    public void testDocumentListKeepsOrderAndState() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        WebDavRepository client1 = new WebDavRepository(config);
+        ConditionalListRepository list = client1.getDocumentList("doc list");
+        list.add(new CheckItem("b"));
+        list.add(new CheckItem("a"));
+        list.add(new CheckItem("c"));
+        list.toggle(new CheckItem("a"));
+        list.remove(new CheckItem("c"));
+        assertThat(list.getContent(), contains(new CheckItem("b"), new CheckItem("a", true)));
+        assertThat(list.hasChanged(), is(false));
+        client1.close();
+    }
+
+    @Test
+    public void testDocumentListToggleOfMissingItemAddsToggledItem() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        WebDavRepository client1 = new WebDavRepository(config);
+        ConditionalListRepository list = client1.getDocumentList("doc toggle");
+        list.add(new CheckItem("a"));
+        list.toggle(new CheckItem("b"));
+        list.toggle(new CheckItem("a", true));
+        assertThat(list.getContent(), contains(new CheckItem("a"), new CheckItem("b", true)));
+        client1.close();
+    }
+
+    @Test
+    public void testDocumentListMergesConcurrentChanges() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        WebDavRepository client1 = new WebDavRepository(config);
+        WebDavRepository client2 = new WebDavRepository(config);
+        ConditionalListRepository list1 = client1.getDocumentList("shared", 2);
+        ConditionalListRepository list2 = client2.getDocumentList("shared", 2);
+        list1.add(new CheckItem("first"));
+        assertThat(list2.getContent(), contains(new CheckItem("first")));
+        list1.add(new CheckItem("second"));
+        // list2 still has the ETags from before list1's second change
+        list2.add(new CheckItem("third"));
+        list2.add(new CheckItem("fourth"));
+        assertThat(list1.hasChanged(), is(true));
+        assertThat(list1.getContent(), containsInAnyOrder(new CheckItem("first"), new CheckItem("second"),
+                new CheckItem("third"), new CheckItem("fourth")));
+        client1.close();
+        client2.close();
+    }
+
+    @Test
+    public void testNetworkConditionsDelayAndCountRequests() throws Exception {
+        final WebDavConfiguration config = new WebDavConfiguration(InetAddress.getLocalHost().getHostAddress(), localPort, "", null, null, false);
+        WebDavRepository client1 = new WebDavRepository(config);
+        ListRepository list = client1.getList("slow");
+        list.add(new CheckItem("a"));
+        server.getNetwork().resetCounters();
+        server.getNetwork().setConditions(100, 0);
+        long start = System.nanoTime();
+        assertThat(list.getContent(), contains(new CheckItem("a")));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100, is(true));
+        assertThat(server.getNetwork().getRequests(), is(1L));
+        assertThat(server.getNetwork().getBytesOut() > 0, is(true));
+        client1.close();
+    }
+
+    @Test
+    public void testRecordsTransportMetrics() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        WebDavConfiguration config = WebDavConfiguration.builder(InetAddress.getLocalHost().getHostAddress(), "")
+                .customPort(localPort)
+                .metrics(metrics)
+                .build();
+        WebDavRepository client1 = new WebDavRepository(config);
+        ListRepository list = client1.getList("measured");
+        list.add(new CheckItem("a"));
+        list.getContent();
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getHistogram(SyncMetrics.REQUEST + "PUT").getCount(), is(1L));
+        assertThat(snapshot.getHistogram(SyncMetrics.REQUEST + "PROPFIND").getCount() >= 1, is(true));
+        assertThat(snapshot.getCounter(SyncMetrics.BYTES_IN) > 0, is(true));
+        assertThat(snapshot.getCounter(SyncMetrics.BYTES_OUT) > 0, is(true));
+        client1.close();
+    }
+
+    @Test
+    public void testRepeatedOperationsAreIdempotent() throws Exception {
+        for (WebDavConfiguration.ToggleStrategy strategy : WebDavConfiguration.ToggleStrategy.values()) {
+            WebDavConfiguration config = WebDavConfiguration.builder(InetAddress.getLocalHost().getHostAddress(), "")
+                    .customPort(localPort)
+                    .toggleStrategy(strategy)
+                    .build();
+            WebDavRepository client1 = new WebDavRepository(config);
+            ListRepository list = client1.getList("repeated-" + strategy);
+            list.add(new CheckItem("a"));
+            list.add(new CheckItem("a"));
+            list.toggle(new CheckItem("a"));
+            list.toggle(new CheckItem("a"));
+            list.add(new CheckItem("b"));
+            list.remove(new CheckItem("b"));
+            list.remove(new CheckItem("b"));
+            assertThat(list.getContent(), contains(new CheckItem("a", true)));
+            client1.close();
+        }
+    }
+
+    @Test
+    public void testAsyncListSyncerSharesConnectionPoolThreads() throws Exception {
+        WebDavConfiguration config = WebDavConfiguration.builder(InetAddress.getLocalHost().getHostAddress(), "")
+                .customPort(localPort)
+                .connectionPool(2, 2)
+                .build();
+        WebDavRepository client1 = new WebDavRepository(config);
+        ListSyncer syncer = new ListSyncer(client1.onIoThreads().getList("async"));
+        for (int i = 0; i < 20; i++) {
+            syncer.add(new CheckItem("item" + i));
+        }
+        syncer.run();
+        assertThat(syncer.getPendingOperations(), is(0));
+        assertThat(client1.getList("async").getContent().size(), is(20));
+        assertThat(client1.onIoThreads().getLists().get(30, TimeUnit.SECONDS), contains("async"));
+        syncer.close();
+        client1.close();
+    }
+
 }
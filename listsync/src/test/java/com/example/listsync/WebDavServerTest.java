@@ -19,12 +19,7 @@
 
 package com.example.listsync;
 
-import com.example.listsync.webdav.MyMiltonConfigurator;
-import io.milton.servlet.MiltonServlet;
-import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.ServerConnector;
-import org.eclipse.jetty.servlet.ServletHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
+import com.example.listsync.webdav.EmbeddedWebDavServer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -38,29 +33,20 @@ public abstract class WebDavServerTest {
 
     @Rule
     public final TemporaryFolder temporaryFolder = new TemporaryFolder();
-    private Server server;
+    protected EmbeddedWebDavServer server;
     protected int localPort;
 
     @Before
     public void setUpJetty() throws Exception {
         Path tempPath = Paths.get(temporaryFolder.getRoot().toURI());
         Files.write(tempPath.resolve("test.txt"), "foo".getBytes());
-        server = new Server(0);
-        ServerConnector connector = new ServerConnector(server);
-        server.addConnector(connector);
-        ServletHandler handler = new ServletHandler();
-        ServletHolder servletHolder = handler.addServletWithMapping(MiltonServlet.class, "/");
-        servletHolder.setInitParameter("milton.configurator", MyMiltonConfigurator.class.getName());
-        servletHolder.setInitParameter("webdav.root", temporaryFolder.getRoot().getAbsolutePath());
-        server.setHandler(handler);
-        server.start();
-        localPort = connector.getLocalPort();
+        server = new EmbeddedWebDavServer(temporaryFolder.getRoot()).start();
+        localPort = server.getLocalPort();
     }
 
     @After
     public void tearDownJetty() throws Exception {
-        server.stop();
-        server.join();
+        server.close();
     }
 
 }
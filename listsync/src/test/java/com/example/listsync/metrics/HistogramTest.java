@@ -0,0 +1,69 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValueOnce() throws Exception {
+        for (long micros = 0; micros < 100000; micros++) {
+            int bucket = Histogram.bucketOf(micros);
+            assertThat(Histogram.upperBoundOf(bucket), greaterThanOrEqualTo(micros));
+            if (bucket > 0) {
+                assertThat(Histogram.upperBoundOf(bucket - 1), is(lessThanOrEqualTo(micros - 1)));
+            }
+        }
+        assertThat(Histogram.bucketOf(Long.MAX_VALUE), is(Histogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentilesAreWithinAQuarter() throws Exception {
+        Histogram histogram = new Histogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis, TimeUnit.MILLISECONDS);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(100L));
+        assertThat(snapshot.getMax(), is(100000L));
+        assertThat(snapshot.getSum(), is(5050000L));
+        assertThat(snapshot.getPercentile(0.5), greaterThanOrEqualTo(50000L));
+        assertThat(snapshot.getPercentile(0.5), lessThanOrEqualTo(62500L));
+        assertThat(snapshot.getPercentile(0.99), greaterThanOrEqualTo(99000L));
+        assertThat(snapshot.getPercentile(1), is(100000L));
+    }
+
+    @Test
+    public void testEmptySnapshot() throws Exception {
+        Histogram.Snapshot snapshot = new Histogram().snapshot();
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getPercentile(0.99), is(0L));
+        assertThat(snapshot.getMean(), is(0.0));
+    }
+
+}
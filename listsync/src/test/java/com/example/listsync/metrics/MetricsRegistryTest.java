@@ -0,0 +1,70 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testSameNameIsSameMetric() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertThat(registry.counter("a"), is(sameInstance(registry.counter("a"))));
+        assertThat(registry.histogram("a"), is(sameInstance(registry.histogram("a"))));
+    }
+
+    @Test
+    public void testSnapshotDoesNotChangeAfterwards() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests").add(3);
+        registry.gauge("ratio", new Gauge() {
+            @Override
+            public double getValue() {
+                return 0.5;
+            }
+        });
+        MetricsSnapshot snapshot = registry.snapshot();
+        registry.counter("requests").inc();
+        assertThat(snapshot.getCounter("requests"), is(3L));
+        assertThat(snapshot.getCounter("unknown"), is(0L));
+        assertThat(snapshot.getGauges().get("ratio"), is(0.5));
+    }
+
+    @Test
+    public void testExportsPrometheusText() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("webdav.bytes.in").add(42);
+        registry.histogram("webdav.request.GET").record(2, TimeUnit.MILLISECONDS);
+        StringWriter out = new StringWriter();
+        new PrometheusTextExporter(out).export(registry.snapshot());
+        assertThat(out.toString(), containsString("listsync_webdav_bytes_in 42\n"));
+        assertThat(out.toString(), containsString("listsync_webdav_request_GET_seconds{quantile=\"0.5\"} 0.002\n"));
+        assertThat(out.toString(), containsString("listsync_webdav_request_GET_seconds_count 1\n"));
+    }
+
+}
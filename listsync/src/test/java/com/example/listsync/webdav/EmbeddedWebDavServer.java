@@ -0,0 +1,79 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.webdav;
+
+import io.milton.servlet.MiltonServlet;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Milton on Jetty serving a directory over WebDAV on a free local port, behind a
+ * {@link NetworkConditionsHandler}.
+ */
+public class EmbeddedWebDavServer implements Closeable {
+
+    private final Server server;
+    private final ServerConnector connector;
+    private final NetworkConditionsHandler network = new NetworkConditionsHandler();
+
+    public EmbeddedWebDavServer(File root) {
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+        ServletHandler handler = new ServletHandler();
+        ServletHolder servletHolder = handler.addServletWithMapping(MiltonServlet.class, "/");
+        servletHolder.setInitParameter("milton.configurator", MyMiltonConfigurator.class.getName());
+        servletHolder.setInitParameter("webdav.root", root.getAbsolutePath());
+        network.setHandler(handler);
+        server.setHandler(network);
+    }
+
+    public EmbeddedWebDavServer start() throws Exception {
+        server.start();
+        return this;
+    }
+
+    public int getLocalPort() {
+        return connector.getLocalPort();
+    }
+
+    public NetworkConditionsHandler getNetwork() {
+        return network;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            server.stop();
+            server.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new IOException("could not stop server", e);
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright Christoph Gritschenberger 2015.
+ *
+ * This file is part of OwnList.
+ *
+ * OwnList is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OwnList is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OwnList.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.example.listsync.webdav;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes the wrapped handler behave like a server behind a slow network: every request is delayed
+ * by a fixed latency, and request and response bodies are limited to a bandwidth. Counts the
+ * requests and the body bytes that went through it.
+ */
+public class NetworkConditionsHandler extends HandlerWrapper {
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * @param latencyMillis  delay before each request is handled
+     * @param bytesPerSecond bandwidth of request and response bodies, or 0 for no limit
+     */
+    public void setConditions(long latencyMillis, long bytesPerSecond) {
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public void resetCounters() {
+        requests.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        requests.incrementAndGet();
+        pause(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        Throttle throttle = new Throttle(bytesPerSecond);
+        ThrottledResponse throttledResponse = new ThrottledResponse(response, throttle);
+        super.handle(target, baseRequest, new ThrottledRequest(request, throttle), throttledResponse);
+        throttledResponse.flushWriter();
+    }
+
+    private static void pause(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while simulating the network", e);
+        }
+    }
+
+    /**
+     * Delays the bytes of one exchange so they do not go through faster than the bandwidth.
+     */
+    private static class Throttle {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+
+        private Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        synchronized void transferred(AtomicLong counter, int count) throws IOException {
+            if (count <= 0) {
+                return;
+            }
+            counter.addAndGet(count);
+            bytes += count;
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            long due = start + TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+            pause(due - System.nanoTime());
+        }
+    }
+
+    private class ThrottledRequest extends HttpServletRequestWrapper {
+        private final Throttle throttle;
+        private ServletInputStream input;
+
+        private ThrottledRequest(HttpServletRequest request, Throttle throttle) {
+            super(request);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (input == null) {
+                final ServletInputStream delegate = super.getInputStream();
+                input = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int read = delegate.read();
+                        throttle.transferred(bytesIn, read < 0 ? 0 : 1);
+                        return read;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int read = delegate.read(b, off, len);
+                        throttle.transferred(bytesIn, read);
+                        return read;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+                };
+            }
+            return input;
+        }
+    }
+
+    private class ThrottledResponse extends HttpServletResponseWrapper {
+        private final Throttle throttle;
+        private ServletOutputStream output;
+        private PrintWriter writer;
+
+        private ThrottledResponse(HttpServletResponse response, Throttle throttle) {
+            super(response);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (output == null) {
+                final ServletOutputStream delegate = super.getOutputStream();
+                output = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throttle.transferred(bytesOut, 1);
+                        delegate.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        throttle.transferred(bytesOut, len);
+                        delegate.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+
+}